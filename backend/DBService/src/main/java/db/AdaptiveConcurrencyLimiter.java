@@ -0,0 +1,107 @@
+package db;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Gradient-style adaptive concurrency limit: grows by about sqrt(limit) while short-term latency
+// tracks the long-term baseline and the target, shrinks with their ratio when it climbs. Requests
+// over the limit are rejected instead of queueing on DBController's monitor; writes get headroom.
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double SHORT_WINDOW = 10;
+    private static final double LONG_WINDOW = 600;
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit, maxLimit;
+    private final double targetLatencyNanos;
+
+    private volatile double limit;
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    // guarded by this
+    private double shortRtt, longRtt;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public AdaptiveConcurrencyLimiter(@Value("${limiter.initial-limit:20}") int initialLimit,
+                                      @Value("${limiter.min-limit:4}") int minLimit,
+                                      @Value("${limiter.max-limit:200}") int maxLimit,
+                                      @Value("${limiter.target-latency-ms:200}") long targetLatencyMs) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatencyNanos = targetLatencyMs * 1_000_000.0;
+    }
+
+    // takes a slot if one is free; writes may go a quarter over the limit
+    public boolean tryAcquire(boolean write) {
+        int cap = (int) limit;
+        if (write) cap += Math.max(1, cap / 4);
+
+        while (true) {
+            int n = inflight.get();
+            if (n >= cap) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (inflight.compareAndSet(n, n + 1)) {
+                admitted.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    // frees the slot and feeds the request's latency into the limit
+    public void release(long latencyNanos) {
+        int n = inflight.getAndDecrement();
+        update(latencyNanos, n);
+    }
+
+    // seconds a rejected caller should wait before retrying
+    public synchronized long retryAfterSeconds() {
+        return Math.max(1, Math.round(shortRtt * 2 / 1_000_000_000.0));
+    }
+
+    public synchronized Map<String,Object> stats() {
+        Map<String,Object> m = new LinkedHashMap<>();
+        m.put("limit", (int) limit);
+        m.put("inflight", inflight.get());
+        m.put("shortLatencyMs", shortRtt / 1_000_000.0);
+        m.put("longLatencyMs", longRtt / 1_000_000.0);
+        m.put("targetLatencyMs", targetLatencyNanos / 1_000_000.0);
+        m.put("admitted", admitted.get());
+        m.put("rejected", rejected.get());
+        return m;
+    }
+
+    private synchronized void update(long rtt, int inflightAtStart) {
+        if (longRtt == 0) {
+            shortRtt = longRtt = rtt;
+            return;
+        }
+        shortRtt += (rtt - shortRtt) / SHORT_WINDOW;
+        longRtt += (rtt - longRtt) / LONG_WINDOW;
+        // let the baseline catch up quickly once latency recovers
+        if (longRtt / shortRtt > 2) longRtt *= 0.95;
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        if (shortRtt > targetLatencyNanos) {
+            gradient = Math.max(0.5, Math.min(gradient, targetLatencyNanos / shortRtt));
+        }
+
+        double next = limit * gradient + Math.sqrt(limit);
+        // don't grow a limit that isn't being used
+        if (next > limit && inflightAtStart < limit / 2) return;
+
+        next = limit * (1 - SMOOTHING) + next * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+}
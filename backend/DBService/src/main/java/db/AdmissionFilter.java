@@ -0,0 +1,50 @@
+package db;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+// Sheds /db requests with 503 + Retry-After when AdaptiveConcurrencyLimiter has no free slot.
+@Component
+public class AdmissionFilter implements Filter {
+
+    private static final String STATS_PATH = "/db/limiter";
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public AdmissionFilter(AdaptiveConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        if (STATS_PATH.equals(request.getRequestURI())) {
+            chain.doFilter(req, res);
+            return;
+        }
+
+        boolean write = !"GET".equalsIgnoreCase(request.getMethod());
+        if (!limiter.tryAcquire(write)) {
+            HttpServletResponse response = (HttpServletResponse) res;
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", String.valueOf(limiter.retryAfterSeconds()));
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(req, res);
+        } finally {
+            limiter.release(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package db;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Roaring-style set of non-negative ints: values are split by their high 16 bits into containers,
+// each a sorted char array up to ARRAY_MAX values and a 65536-bit bitmap above that.
+public class CompactBitSet {
+
+    private static final int ARRAY_MAX = 4096;
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+    private int size;
+
+    public boolean add(int v) {
+        char hi = (char) (v >>> 16);
+        int i = Arrays.binarySearch(keys, hi);
+        if (i < 0) {
+            i = -i - 1;
+            keys = insert(keys, i, hi);
+            containers = insert(containers, i, new ArrayContainer());
+        }
+        Container c = containers[i];
+        if (!c.add((char) v)) return false;
+        if (c instanceof ArrayContainer a && a.card > ARRAY_MAX) containers[i] = a.toBitmap();
+        size++;
+        return true;
+    }
+
+    public boolean remove(int v) {
+        int i = Arrays.binarySearch(keys, (char) (v >>> 16));
+        if (i < 0) return false;
+
+        Container c = containers[i];
+        if (!c.remove((char) v)) return false;
+        size--;
+        if (c.cardinality() == 0) {
+            keys = delete(keys, i);
+            containers = delete(containers, i);
+        } else if (c instanceof BitmapContainer b && b.card <= ARRAY_MAX) {
+            containers[i] = b.toArray();
+        }
+        return true;
+    }
+
+    public boolean contains(int v) {
+        int i = Arrays.binarySearch(keys, (char) (v >>> 16));
+        return i >= 0 && containers[i].contains((char) v);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // values in ascending order
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    public int[] toArray() {
+        int[] res = new int[size];
+        int[] n = {0};
+        forEach(v -> res[n[0]++] = v);
+        return res;
+    }
+
+    private interface Container {
+        boolean add(char lo);
+        boolean remove(char lo);
+        boolean contains(char lo);
+        int cardinality();
+        void forEach(int base, IntConsumer action);
+    }
+
+    private static class ArrayContainer implements Container {
+        char[] values = new char[4];
+        int card;
+
+        public boolean add(char lo) {
+            int i = Arrays.binarySearch(values, 0, card, lo);
+            if (i >= 0) return false;
+            i = -i - 1;
+            if (card == values.length) values = Arrays.copyOf(values, values.length * 2);
+            System.arraycopy(values, i, values, i + 1, card - i);
+            values[i] = lo;
+            card++;
+            return true;
+        }
+
+        public boolean remove(char lo) {
+            int i = Arrays.binarySearch(values, 0, card, lo);
+            if (i < 0) return false;
+            System.arraycopy(values, i + 1, values, i, card - i - 1);
+            card--;
+            return true;
+        }
+
+        public boolean contains(char lo) {
+            return Arrays.binarySearch(values, 0, card, lo) >= 0;
+        }
+
+        public int cardinality() {
+            return card;
+        }
+
+        public void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < card; i++) action.accept(base | values[i]);
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer b = new BitmapContainer();
+            for (int i = 0; i < card; i++) b.add(values[i]);
+            return b;
+        }
+    }
+
+    private static class BitmapContainer implements Container {
+        final long[] words = new long[1024];
+        int card;
+
+        public boolean add(char lo) {
+            long bit = 1L << lo;
+            if ((words[lo >>> 6] & bit) != 0) return false;
+            words[lo >>> 6] |= bit;
+            card++;
+            return true;
+        }
+
+        public boolean remove(char lo) {
+            long bit = 1L << lo;
+            if ((words[lo >>> 6] & bit) == 0) return false;
+            words[lo >>> 6] &= ~bit;
+            card--;
+            return true;
+        }
+
+        public boolean contains(char lo) {
+            return (words[lo >>> 6] & (1L << lo)) != 0;
+        }
+
+        public int cardinality() {
+            return card;
+        }
+
+        public void forEach(int base, IntConsumer action) {
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    action.accept(base | (w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        ArrayContainer toArray() {
+            ArrayContainer a = new ArrayContainer();
+            a.values = new char[Math.max(4, card)];
+            forEach(0, v -> a.values[a.card++] = (char) v);
+            return a;
+        }
+    }
+
+    private static char[] insert(char[] a, int i, char v) {
+        char[] res = new char[a.length + 1];
+        System.arraycopy(a, 0, res, 0, i);
+        res[i] = v;
+        System.arraycopy(a, i, res, i + 1, a.length - i);
+        return res;
+    }
+
+    private static Container[] insert(Container[] a, int i, Container v) {
+        Container[] res = new Container[a.length + 1];
+        System.arraycopy(a, 0, res, 0, i);
+        res[i] = v;
+        System.arraycopy(a, i, res, i + 1, a.length - i);
+        return res;
+    }
+
+    private static char[] delete(char[] a, int i) {
+        char[] res = new char[a.length - 1];
+        System.arraycopy(a, 0, res, 0, i);
+        System.arraycopy(a, i + 1, res, i, a.length - i - 1);
+        return res;
+    }
+
+    private static Container[] delete(Container[] a, int i) {
+        Container[] res = new Container[a.length - 1];
+        System.arraycopy(a, 0, res, 0, i);
+        System.arraycopy(a, i + 1, res, i, a.length - i - 1);
+        return res;
+    }
+}
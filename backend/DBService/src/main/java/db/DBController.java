@@ -25,8 +25,29 @@ public class DBController {
     // posts timeline
     private List<Map<String,Object>> posts = new ArrayList<>();
 
-    public DBController() {
+    // full-text search, segmented by day
+    private static final long SEARCH_SLICE_MS = 24L * 60 * 60 * 1000;
+    private final SearchIndex postIndex = new SearchIndex(SEARCH_SLICE_MS, "from");
+    private final SearchIndex chatIndex = new SearchIndex(SEARCH_SLICE_MS, "from", "to");
+
+    // trending hashtags/authors/posts; ranked timelines re-score at most this many recent posts
+    private static final int RANKED_TIMELINE_WINDOW = 200;
+    private final TrendingEngine trending = new TrendingEngine();
+    // author -> positions of their posts in posts, oldest first
+    private final Map<String, List<Integer>> postsByAuthor = new HashMap<>();
+
+    // user directory and follow deltas
+    private static final int MAX_USERS_PAGE = 1000;
+    private final UserDirectory directory = new UserDirectory();
+    private final FollowChangeLog followLog = new FollowChangeLog();
+    private final FollowRecommender recommender = new FollowRecommender();
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public DBController(AdaptiveConcurrencyLimiter limiter) {
+        this.limiter = limiter;
         loadAll();
+        buildIndexes();
     }
 
     private synchronized void loadAll() {
@@ -38,6 +59,30 @@ public class DBController {
         catch(Exception e){ e.printStackTrace(); posts = new ArrayList<>(); }
     }
 
+    private synchronized void buildIndexes() {
+        for (Map.Entry<String, Set<String>> e : followers.entrySet()) {
+            directory.add(e.getKey());
+            for (String target : e.getValue()) {
+                directory.add(target);
+                recommender.follow(e.getKey(), target);
+            }
+        }
+        for (int i = 0; i < posts.size(); i++) {
+            Map<String,Object> p = posts.get(i);
+            postsByAuthor.computeIfAbsent((String) p.get("from"), k -> new ArrayList<>()).add(i);
+            postIndex.add(p);
+            trending.add(p);
+        }
+        // every message is stored under both participants; index it once, from the sender's side
+        for (Map.Entry<String, Map<String, List<Map<String,Object>>>> e : chats.entrySet()) {
+            for (List<Map<String,Object>> msgs : e.getValue().values()) {
+                for (Map<String,Object> m : msgs) {
+                    if (e.getKey().equals(m.get("from"))) chatIndex.add(m);
+                }
+            }
+        }
+    }
+
     private synchronized void saveFollowers() {
         try { mapper.writerWithDefaultPrettyPrinter().writeValue(new File(FOLLOWERS_FILE), followers); }
         catch(Exception e){ e.printStackTrace(); }
@@ -51,6 +96,12 @@ public class DBController {
         catch(Exception e){ e.printStackTrace(); }
     }
 
+    // admission control: current limit, latency and admitted vs rejected requests
+    @GetMapping("/limiter")
+    public Map<String,Object> limiterStats() {
+        return limiter.stats();
+    }
+
     // follow/unfollow
     @PostMapping("/follow")
     public synchronized void followAction(@RequestBody Map<String,String> req) {
@@ -62,38 +113,84 @@ public class DBController {
         followers.putIfAbsent(currentUser, new HashSet<>());
         followers.putIfAbsent(targetUser, new HashSet<>());
 
+        directory.add(currentUser);
+        directory.add(targetUser);
+
         if ("follow".equalsIgnoreCase(action)) {
-            followers.get(currentUser).add(targetUser);
+            if (followers.get(currentUser).add(targetUser)) {
+                followLog.record(currentUser, targetUser, true);
+                recommender.follow(currentUser, targetUser);
+            }
         } else {
-            followers.get(currentUser).remove(targetUser);
+            if (followers.get(currentUser).remove(targetUser)) {
+                followLog.record(currentUser, targetUser, false);
+                recommender.unfollow(currentUser, targetUser);
+            }
         }
         saveFollowers();
     }
 
-    // get users list (other users plus followed flag)
+    // one page of the user directory (other users plus followed flag), in name order
     @GetMapping("/users")
-    public synchronized List<Map<String,Object>> getUsers(@RequestParam String currentUser) {
-        Set<String> allUsers = new HashSet<>(followers.keySet());
-        // Include all users who are targets of follows (in case they haven't followed anyone yet)
-        for (Set<String> targets : followers.values()) {
-            allUsers.addAll(targets);
-        }
-
-        // Ensure currentUser exists
-        allUsers.add(currentUser);
-
+    public synchronized Map<String,Object> getUsers(@RequestParam String currentUser,
+                                                    @RequestParam(defaultValue = "") String prefix,
+                                                    @RequestParam(required = false) String cursor,
+                                                    @RequestParam(defaultValue = "100") int limit) {
+        int n = Math.max(1, Math.min(limit, MAX_USERS_PAGE));
         Set<String> following = followers.getOrDefault(currentUser, new HashSet<>());
-        List<Map<String,Object>> res = new ArrayList<>();
-        for (String u : allUsers) {
+
+        // two extra: one in case currentUser is in the page, one to tell whether there is more
+        List<String> page = directory.page(prefix, cursor, n + 2);
+        List<Map<String,Object>> users = new ArrayList<>();
+        String last = null;
+        boolean more = false;
+        for (String u : page) {
+            if (users.size() == n) { more = true; break; }
+            last = u;
             if (u.equals(currentUser)) continue;
             Map<String,Object> m = new HashMap<>();
             m.put("username", u);
             m.put("followed", following.contains(u));
-            res.add(m);
+            users.add(m);
+        }
+
+        Map<String,Object> res = new HashMap<>();
+        res.put("users", users);
+        res.put("nextCursor", more ? last : null);
+        return res;
+    }
+
+    // who currentUser follows: the full set, or only the changes after "since" when they are still logged
+    @GetMapping("/following")
+    public synchronized Map<String,Object> getFollowing(@RequestParam String currentUser,
+                                                        @RequestParam(required = false) Long since) {
+        Map<String,Object> res = new HashMap<>();
+        res.put("version", followLog.version());
+
+        Map<String,Boolean> delta = since == null ? null : followLog.since(currentUser, since);
+        if (delta == null) {
+            res.put("full", true);
+            res.put("following", new ArrayList<>(followers.getOrDefault(currentUser, new HashSet<>())));
+        } else {
+            List<String> added = new ArrayList<>();
+            List<String> removed = new ArrayList<>();
+            for (Map.Entry<String,Boolean> e : delta.entrySet()) {
+                (e.getValue() ? added : removed).add(e.getKey());
+            }
+            res.put("full", false);
+            res.put("added", added);
+            res.put("removed", removed);
         }
         return res;
     }
 
+    // who to follow: friends of friends ranked by how many of the user's follows follow them
+    @GetMapping("/recommendations")
+    public synchronized List<Map<String,Object>> getRecommendations(@RequestParam String currentUser,
+                                                                  @RequestParam(defaultValue = "10") int k) {
+        return recommender.recommend(currentUser, k);
+    }
+
     // chats persistence
     @PostMapping("/chats")
     public synchronized void persistChat(@RequestBody Map<String,Object> msg) {
@@ -104,6 +201,8 @@ public class DBController {
         // Ensure users exist in followers map
         followers.putIfAbsent(from, new HashSet<>());
         followers.putIfAbsent(to, new HashSet<>());
+        directory.add(from);
+        directory.add(to);
 
         chats.putIfAbsent(from, new HashMap<>());
         chats.get(from).putIfAbsent(to, new ArrayList<>());
@@ -113,6 +212,7 @@ public class DBController {
         chats.get(to).putIfAbsent(from, new ArrayList<>());
         chats.get(to).get(from).add(msg);
 
+        chatIndex.add(msg);
         saveChats();
     }
 
@@ -126,12 +226,20 @@ public class DBController {
     @PostMapping("/posts")
     public synchronized void persistPost(@RequestBody Map<String,Object> postMsg) {
         posts.add(postMsg);
+        postsByAuthor.computeIfAbsent((String) postMsg.get("from"), k -> new ArrayList<>()).add(posts.size() - 1);
+        postIndex.add(postMsg);
+        trending.add(postMsg);
         savePosts();
     }
 
     @GetMapping("/timeline")
-    public synchronized List<Map<String,Object>> getTimeline(@RequestParam String currentUser) {
+    public synchronized List<Map<String,Object>> getTimeline(@RequestParam String currentUser,
+                                                           @RequestParam(defaultValue = "recent") String mode) {
         Set<String> following = followers.getOrDefault(currentUser, new HashSet<>());
+        if ("ranked".equalsIgnoreCase(mode)) {
+            return rankedTimeline(currentUser, following);
+        }
+
         List<Map<String,Object>> res = new ArrayList<>();
         for (Map<String,Object> p : posts) {
             String from = (String) p.get("from");
@@ -142,6 +250,78 @@ public class DBController {
         return res;
     }
 
+    // newest RANKED_TIMELINE_WINDOW visible posts, best trending score first.
+    // Merges the authors' own post lists newest first, so the cost follows the window, not all posts.
+    private List<Map<String,Object>> rankedTimeline(String currentUser, Set<String> following) {
+        Set<String> authors = new HashSet<>(following);
+        authors.add(currentUser);
+
+        // {position in posts, author list, index in that list}, latest position first
+        List<List<Integer>> lists = new ArrayList<>();
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> Integer.compare(b[0], a[0]));
+        for (String a : authors) {
+            List<Integer> l = postsByAuthor.get(a);
+            if (l == null || l.isEmpty()) continue;
+            lists.add(l);
+            heads.add(new int[]{l.get(l.size() - 1), lists.size() - 1, l.size() - 1});
+        }
+
+        List<Map<String,Object>> res = new ArrayList<>();
+        while (!heads.isEmpty() && res.size() < RANKED_TIMELINE_WINDOW) {
+            int[] h = heads.poll();
+            res.add(posts.get(h[0]));
+            if (h[2] > 0) {
+                h[2]--;
+                h[0] = lists.get(h[1]).get(h[2]);
+                heads.add(h);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        Map<Map<String,Object>, Double> scores = new IdentityHashMap<>();
+        for (Map<String,Object> p : res) scores.put(p, trending.score(p, now));
+        res.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+        return res;
+    }
+
+    // trending hashtags and authors, plus top posts visible to the user
+    @GetMapping("/trending")
+    public synchronized Map<String,Object> getTrending(@RequestParam String currentUser,
+                                                       @RequestParam(defaultValue = "10") int k) {
+        Set<String> following = followers.getOrDefault(currentUser, new HashSet<>());
+        long now = System.currentTimeMillis();
+
+        Map<String,Object> res = new LinkedHashMap<>();
+        res.put("hashtags", trending.topHashtags(k, now));
+        res.put("authors", trending.topAuthors(k, now));
+        res.put("posts", trending.topPosts(k, p -> {
+            String from = (String) p.get("from");
+            return currentUser.equals(from) || following.contains(from);
+        }));
+        res.put("postsLastHour", trending.recentPosts(now));
+        return res;
+    }
+
+    // search posts by the user and the people they follow
+    @GetMapping("/search/posts")
+    public synchronized List<Map<String,Object>> searchPosts(@RequestParam String currentUser,
+                                                           @RequestParam String q,
+                                                           @RequestParam(defaultValue = "20") int k,
+                                                           @RequestParam(defaultValue = "recent") String sort) {
+        Set<String> authors = new HashSet<>(followers.getOrDefault(currentUser, new HashSet<>()));
+        authors.add(currentUser);
+        return postIndex.search(q, k, "relevance".equalsIgnoreCase(sort), authors);
+    }
+
+    // search the user's own conversations
+    @GetMapping("/search/chats")
+    public synchronized List<Map<String,Object>> searchChats(@RequestParam String username,
+                                                           @RequestParam String q,
+                                                           @RequestParam(defaultValue = "20") int k,
+                                                           @RequestParam(defaultValue = "recent") String sort) {
+        return chatIndex.search(q, k, "relevance".equalsIgnoreCase(sort), Set.of(username));
+    }
+
     // return followers of a specific user (useful when broadcasting)
     @GetMapping("/followersOf")
     public synchronized List<String> followersOf(@RequestParam String user) {
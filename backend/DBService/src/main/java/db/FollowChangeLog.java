@@ -0,0 +1,53 @@
+package db;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Bounded per-user log of follow/unfollow changes, so callers that already hold a follow set
+// can ask for what changed since a version instead of downloading the whole set again.
+// Versions are (epoch << 32) | counter with a random epoch per process, so a version handed
+// out before a restart never matches and forces a full resync. The epoch is kept to 21 bits so
+// versions stay below 2^53 and survive a round trip through JavaScript numbers.
+public class FollowChangeLog {
+
+    private static final int MAX_CHANGES_PER_USER = 256;
+
+    private record Change(long version, String target, boolean followed) {}
+
+    private static final int EPOCH_BITS = 21;
+
+    private final long epoch = ThreadLocalRandom.current().nextInt(1, 1 << EPOCH_BITS);
+    private final long startVersion = epoch << 32;
+    private long version = startVersion;
+
+    private final Map<String, Deque<Change>> changes = new HashMap<>();
+    // user -> highest version dropped from that user's log
+    private final Map<String, Long> trimmedUpTo = new HashMap<>();
+
+    public long version() {
+        return version;
+    }
+
+    public void record(String user, String target, boolean followed) {
+        version++;
+        Deque<Change> log = changes.computeIfAbsent(user, k -> new ArrayDeque<>());
+        log.addLast(new Change(version, target, followed));
+        if (log.size() > MAX_CHANGES_PER_USER) {
+            trimmedUpTo.put(user, log.removeFirst().version());
+        }
+    }
+
+    // Changes for user after since: target -> followed. Null when the log can't answer
+    // (another process's version, or one that is too old); the caller then sends the full set.
+    public Map<String, Boolean> since(String user, long since) {
+        if ((since >>> 32) != epoch) return null;
+        if (since > version || since < trimmedUpTo.getOrDefault(user, startVersion)) return null;
+
+        // later changes to the same target win
+        Map<String, Boolean> res = new LinkedHashMap<>();
+        for (Change c : changes.getOrDefault(user, new ArrayDeque<>())) {
+            if (c.version() > since) res.put(c.target(), c.followed());
+        }
+        return res;
+    }
+}
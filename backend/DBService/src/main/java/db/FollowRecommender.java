@@ -0,0 +1,237 @@
+package db;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// "Who to follow": users followed by the people u follows, ranked by how many of them follow
+// the candidate. Per-user candidate counts are cached as primitive maps and patched in place
+// on follow/unfollow.
+public class FollowRecommender {
+
+    // cache budget in map slots (two ints each), across all cached users
+    private static final int CACHE_SLOTS = 4_000_000;
+    // neighbours counted per fork-join leaf
+    private static final int LEAF_SIZE = 64;
+
+    private final Map<String,Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<CompactBitSet> out = new ArrayList<>();
+    private final List<CompactBitSet> in = new ArrayList<>();
+
+    // user id -> (candidate id -> mutual count), least recently used first
+    private final LinkedHashMap<Integer, IntIntMap> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedSlots;
+    private final long cacheSlots;
+    // a user whose counts alone would take more than this is recomputed every time
+    private final long maxCachedSlots;
+
+    public FollowRecommender() {
+        this(CACHE_SLOTS);
+    }
+
+    // smaller budgets let FollowRecommenderCheck exercise eviction
+    FollowRecommender(long cacheSlots) {
+        this.cacheSlots = cacheSlots;
+        this.maxCachedSlots = cacheSlots / 8;
+    }
+
+    public void follow(String user, String target) {
+        int u = idOf(user), t = idOf(target);
+        if (!out.get(u).add(t)) return;
+        in.get(t).add(u);
+        adjust(u, t, 1);
+    }
+
+    public void unfollow(String user, String target) {
+        Integer u = ids.get(user), t = ids.get(target);
+        if (u == null || t == null || !out.get(u).remove(t)) return;
+        in.get(t).remove(u);
+        adjust(u, t, -1);
+    }
+
+    // top k users to follow for user: username and mutual count
+    public List<Map<String,Object>> recommend(String user, int k) {
+        Integer u = ids.get(user);
+        if (u == null || k <= 0) return new ArrayList<>();
+
+        IntIntMap counts = cache.get(u);
+        if (counts == null) {
+            counts = count(out.get(u).toArray());
+            if (counts.capacity() <= maxCachedSlots) {
+                cache.put(u, counts);
+                cachedSlots += counts.capacity();
+                trimCache();
+            }
+        }
+
+        CompactBitSet following = out.get(u);
+        // min-heap holding the current top k: fewer mutuals first, then later names first
+        PriorityQueue<int[]> top = new PriorityQueue<>((a, b) ->
+                a[1] != b[1] ? Integer.compare(a[1], b[1]) : names.get(b[0]).compareTo(names.get(a[0])));
+        for (int i = 0; i < counts.keys.length; i++) {
+            int c = counts.keys[i];
+            if (c == IntIntMap.EMPTY || counts.values[i] <= 0 || c == u || following.contains(c)) continue;
+            top.add(new int[]{c, counts.values[i]});
+            if (top.size() > k) top.poll();
+        }
+
+        List<Map<String,Object>> res = new ArrayList<>();
+        while (!top.isEmpty()) {
+            int[] e = top.poll();
+            Map<String,Object> m = new HashMap<>();
+            m.put("username", names.get(e[0]));
+            m.put("mutual", e[1]);
+            res.add(m);
+        }
+        Collections.reverse(res);
+        return res;
+    }
+
+    // u started (delta = 1) or stopped (delta = -1) following t: patch every cached count it touches
+    private void adjust(int u, int t, int delta) {
+        IntIntMap own = cache.get(u);
+        if (own != null) {
+            int before = own.capacity();
+            out.get(t).forEach(c -> own.add(c, delta));
+            cachedSlots += own.capacity() - before;
+        }
+        in.get(u).forEach(w -> {
+            IntIntMap counts = cache.get(w);
+            if (counts != null) {
+                int before = counts.capacity();
+                counts.add(t, delta);
+                cachedSlots += counts.capacity() - before;
+            }
+        });
+        trimCache();
+    }
+
+    // evict least recently used users until the cache fits its slot budget
+    private void trimCache() {
+        Iterator<IntIntMap> it = cache.values().iterator();
+        while (cachedSlots > cacheSlots && it.hasNext()) {
+            cachedSlots -= it.next().capacity();
+            it.remove();
+        }
+    }
+
+    private IntIntMap count(int[] neighbours) {
+        if (neighbours.length <= LEAF_SIZE) {
+            return new CountTask(neighbours, 0, neighbours.length).compute();
+        }
+        return ForkJoinPool.commonPool().invoke(new CountTask(neighbours, 0, neighbours.length));
+    }
+
+    private int idOf(String user) {
+        Integer id = ids.get(user);
+        if (id != null) return id;
+
+        id = names.size();
+        ids.put(user, id);
+        names.add(user);
+        out.add(new CompactBitSet());
+        in.add(new CompactBitSet());
+        return id;
+    }
+
+    // counts, for every candidate, how many of neighbours[lo, hi) follow it
+    private class CountTask extends RecursiveTask<IntIntMap> {
+        private final int[] neighbours;
+        private final int lo, hi;
+
+        CountTask(int[] neighbours, int lo, int hi) {
+            this.neighbours = neighbours;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected IntIntMap compute() {
+            if (hi - lo <= LEAF_SIZE) {
+                IntIntMap counts = new IntIntMap();
+                for (int i = lo; i < hi; i++) {
+                    out.get(neighbours[i]).forEach(c -> counts.add(c, 1));
+                }
+                return counts;
+            }
+
+            int mid = (lo + hi) >>> 1;
+            CountTask left = new CountTask(neighbours, lo, mid);
+            left.fork();
+            IntIntMap right = new CountTask(neighbours, mid, hi).compute();
+            IntIntMap l = left.join();
+
+            // merge the smaller map into the larger one
+            IntIntMap big = l.size >= right.size ? l : right;
+            IntIntMap small = big == l ? right : l;
+            for (int i = 0; i < small.keys.length; i++) {
+                if (small.keys[i] != IntIntMap.EMPTY) big.add(small.keys[i], small.values[i]);
+            }
+            return big;
+        }
+    }
+
+    // Open-addressing int -> int map with linear probing. Keys are user ids, so -1 marks a free
+    // slot. A count that drops to zero keeps its slot until the next resize drops it.
+    private static class IntIntMap {
+        static final int EMPTY = -1;
+
+        int[] keys;
+        int[] values;
+        int size;
+
+        IntIntMap() {
+            this(16);
+        }
+
+        private IntIntMap(int capacity) {
+            keys = new int[capacity];
+            values = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        int capacity() {
+            return keys.length;
+        }
+
+        void add(int key, int delta) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != EMPTY) {
+                if (keys[i] == key) {
+                    values[i] += delta;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = delta;
+            if (++size * 2 > keys.length) resize();
+        }
+
+        // rebuild without zero counts, at most a quarter full
+        private void resize() {
+            int live = 0;
+            for (int i = 0; i < keys.length; i++) if (keys[i] != EMPTY && values[i] != 0) live++;
+
+            IntIntMap next = new IntIntMap(Math.max(16, Integer.highestOneBit(Math.max(1, live)) << 2));
+            int mask = next.keys.length - 1;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == EMPTY || values[i] == 0) continue;
+                int j = slot(keys[i], mask);
+                while (next.keys[j] != EMPTY) j = (j + 1) & mask;
+                next.keys[j] = keys[i];
+                next.values[j] = values[i];
+            }
+            keys = next.keys;
+            values = next.values;
+            size = live;
+        }
+
+        private static int slot(int key, int mask) {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
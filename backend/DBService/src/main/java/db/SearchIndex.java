@@ -0,0 +1,356 @@
+package db;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+
+// Inverted index over the "text" field of posts or chat messages, in day-sized segments.
+// Postings are varint (doc id delta, tf) pairs with a skip entry every BLOCK postings. Each
+// segment also keeps a posting list per owner (the ownerFields values, e.g. "from"), so a user
+// who can only see a few documents is answered from those instead of from every matching term.
+public class SearchIndex {
+
+    private final long sliceMs;
+    private final String[] ownerFields;
+
+    // doc id -> stored document (the same map that is persisted)
+    private final List<Map<String,Object>> docs = new ArrayList<>();
+    // time slice -> segment
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    // term -> number of documents containing it, across all segments
+    private final Map<String,Integer> docFreq = new HashMap<>();
+
+    public SearchIndex(long sliceMs, String... ownerFields) {
+        this.sliceMs = sliceMs;
+        this.ownerFields = ownerFields;
+    }
+
+    public void add(Map<String,Object> doc) {
+        int id = docs.size();
+        docs.add(doc);
+
+        Map<String,Integer> tf = termFrequencies((String) doc.get("text"));
+        if (tf.isEmpty()) return;
+
+        Segment seg = segments.computeIfAbsent(timestampOf(doc) / sliceMs, k -> new Segment());
+        for (Map.Entry<String,Integer> e : tf.entrySet()) {
+            seg.postings.computeIfAbsent(e.getKey(), k -> new PostingList()).add(id, e.getValue());
+            docFreq.merge(e.getKey(), 1, Integer::sum);
+        }
+        Set<Object> seen = new HashSet<>();
+        for (String field : ownerFields) {
+            Object owner = doc.get(field);
+            if (owner != null && seen.add(owner)) {
+                seg.byOwner.computeIfAbsent(owner.toString(), k -> new PostingList()).add(id, 1);
+            }
+        }
+    }
+
+    public int size() {
+        return docs.size();
+    }
+
+    // Top k documents matching every term of the query and owned by one of owners.
+    // Newest first, or best tf-idf score first when byRelevance is set.
+    public List<Map<String,Object>> search(String query, int k, boolean byRelevance, Set<String> owners) {
+        Set<String> terms = termFrequencies(query).keySet();
+        if (terms.isEmpty() || owners.isEmpty() || k <= 0) return new ArrayList<>();
+
+        String[] ts = terms.toArray(new String[0]);
+        IntPredicate visible = id -> ownedBy(docs.get(id), owners);
+        return byRelevance ? searchByRelevance(ts, k, owners, visible) : searchByRecency(ts, k, owners, visible);
+    }
+
+    private List<Map<String,Object>> searchByRecency(String[] terms, int k, Set<String> owners, IntPredicate visible) {
+        List<Map<String,Object>> res = new ArrayList<>();
+        // newest slice first; stop as soon as k hits are found
+        for (Segment seg : segments.descendingMap().values()) {
+            Match m = seg.match(terms, owners, visible);
+            if (m == null) continue;
+
+            List<Map<String,Object>> hits = new ArrayList<>(m.size);
+            for (int i = 0; i < m.size; i++) hits.add(docs.get(m.ids[i]));
+            hits.sort((a, b) -> Long.compare(timestampOf(b), timestampOf(a)));
+            for (Map<String,Object> d : hits) {
+                res.add(d);
+                if (res.size() == k) return res;
+            }
+        }
+        return res;
+    }
+
+    private List<Map<String,Object>> searchByRelevance(String[] terms, int k, Set<String> owners, IntPredicate visible) {
+        double[] idf = new double[terms.length];
+        for (int t = 0; t < terms.length; t++) {
+            idf[t] = Math.log(1.0 + (double) docs.size() / Math.max(1, docFreq.getOrDefault(terms[t], 0)));
+        }
+
+        // min-heap on (score, timestamp) holding the current top k
+        PriorityQueue<Scored> top = new PriorityQueue<>();
+        for (Segment seg : segments.descendingMap().values()) {
+            Match m = seg.match(terms, owners, visible);
+            if (m == null) continue;
+
+            for (int i = 0; i < m.size; i++) {
+                Map<String,Object> d = docs.get(m.ids[i]);
+                double score = 0;
+                for (int t = 0; t < terms.length; t++) {
+                    score += (1 + Math.log(m.tfs[t][i])) * idf[t];
+                }
+                Scored s = new Scored(score, timestampOf(d), d);
+                if (top.size() < k) {
+                    top.add(s);
+                } else if (s.compareTo(top.peek()) > 0) {
+                    top.poll();
+                    top.add(s);
+                }
+            }
+        }
+
+        List<Map<String,Object>> res = new ArrayList<>(top.size());
+        while (!top.isEmpty()) res.add(top.poll().doc);
+        Collections.reverse(res);
+        return res;
+    }
+
+    private boolean ownedBy(Map<String,Object> doc, Set<String> owners) {
+        for (String field : ownerFields) {
+            Object owner = doc.get(field);
+            if (owner != null && owners.contains(owner.toString())) return true;
+        }
+        return false;
+    }
+
+    // lower-cased runs of letters/digits, with their counts
+    static Map<String,Integer> termFrequencies(String text) {
+        Map<String,Integer> tf = new HashMap<>();
+        if (text == null) return tf;
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            } else if (sb.length() > 0) {
+                tf.merge(sb.toString(), 1, Integer::sum);
+                sb.setLength(0);
+            }
+        }
+        return tf;
+    }
+
+    private static long timestampOf(Map<String,Object> doc) {
+        Object ts = doc.get("timestamp");
+        return ts instanceof Number n ? n.longValue() : 0L;
+    }
+
+    private record Scored(double score, long timestamp, Map<String,Object> doc) implements Comparable<Scored> {
+        @Override
+        public int compareTo(Scored o) {
+            int c = Double.compare(score, o.score);
+            return c != 0 ? c : Long.compare(timestamp, o.timestamp);
+        }
+    }
+
+    // visible doc ids present in every term's posting list, with the term frequencies per term
+    private record Match(int[] ids, int[][] tfs, int size) {}
+
+    private static class Segment {
+        final Map<String, PostingList> postings = new HashMap<>();
+        final Map<String, PostingList> byOwner = new HashMap<>();
+
+        Match match(String[] terms, Set<String> owners, IntPredicate visible) {
+            int n = terms.length;
+            PostingList[] lists = new PostingList[n];
+            int shortest = 0;
+            for (int i = 0; i < n; i++) {
+                lists[i] = postings.get(terms[i]);
+                if (lists[i] == null) return null;
+                if (lists[i].count < lists[shortest].count) shortest = i;
+            }
+
+            // stop looking up owners once they can't beat the shortest term list
+            List<PostingList> ownerLists = new ArrayList<>();
+            long ownerDocs = 0;
+            boolean allOwners = true;
+            for (String o : owners) {
+                if (ownerDocs >= lists[shortest].count) {
+                    allOwners = false;
+                    break;
+                }
+                PostingList pl = byOwner.get(o);
+                if (pl != null) {
+                    ownerLists.add(pl);
+                    ownerDocs += pl.count;
+                }
+            }
+            if (allOwners && ownerLists.isEmpty()) return null;
+
+            Cursor[] cursors = new Cursor[n];
+            for (int i = 0; i < n; i++) cursors[i] = lists[i].cursor();
+
+            boolean byOwners = allOwners && ownerDocs < lists[shortest].count;
+            int cap = byOwners ? (int) ownerDocs : lists[shortest].count;
+            int[] outIds = new int[cap];
+            int[][] outTfs = new int[n][cap];
+            int size = 0;
+
+            if (byOwners) {
+                // few visible docs: probe the term lists with the owners' doc ids, skipping blocks
+                outer:
+                for (int id : union(ownerLists)) {
+                    for (Cursor c : cursors) {
+                        if (c.advance(id) != id) continue outer;
+                    }
+                    outIds[size] = id;
+                    for (int i = 0; i < n; i++) outTfs[i][size] = cursors[i].tf;
+                    size++;
+                }
+            } else {
+                // leapfrog from the shortest term list, checking visibility on each match
+                Cursor lead = cursors[shortest];
+                int id = lead.next();
+                while (id != Cursor.END) {
+                    int next = id;
+                    for (Cursor c : cursors) {
+                        if (c == lead) continue;
+                        next = c.advance(id);
+                        if (next != id) break;
+                    }
+                    if (next != id) {
+                        id = lead.advance(next);
+                        continue;
+                    }
+                    if (visible.test(id)) {
+                        outIds[size] = id;
+                        for (int i = 0; i < n; i++) outTfs[i][size] = cursors[i].tf;
+                        size++;
+                    }
+                    id = lead.next();
+                }
+            }
+            return size == 0 ? null : new Match(outIds, outTfs, size);
+        }
+
+        // sorted, de-duplicated doc ids across the given lists
+        private static int[] union(List<PostingList> lists) {
+            int total = 0;
+            for (PostingList pl : lists) total += pl.count;
+            int[] ids = new int[total];
+            int p = 0;
+            for (PostingList pl : lists) {
+                Cursor c = pl.cursor();
+                for (int id = c.next(); id != Cursor.END; id = c.next()) ids[p++] = id;
+            }
+            if (lists.size() == 1) return ids;
+
+            Arrays.sort(ids);
+            int u = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (u == 0 || ids[i] != ids[u - 1]) ids[u++] = ids[i];
+            }
+            return Arrays.copyOf(ids, u);
+        }
+    }
+
+    // Append-only list of (doc id delta, tf) pairs, each as an unsigned varint. Every BLOCK-th
+    // posting starts a block: its id is stored whole and recorded in skipIds/skipOffsets.
+    private static class PostingList {
+        static final int BLOCK = 128;
+
+        byte[] buf = new byte[16];
+        int len;
+        int count;
+        int lastId = -1;
+        // block b >= 1 -> first doc id and byte offset; allocated once there is a second block
+        int[] skipIds, skipOffsets;
+
+        void add(int id, int tf) {
+            if (count % BLOCK == 0) {
+                int b = count / BLOCK;
+                if (b > 0) {
+                    if (skipIds == null || b == skipIds.length) {
+                        int n = skipIds == null ? 4 : skipIds.length * 2;
+                        skipIds = skipIds == null ? new int[n] : Arrays.copyOf(skipIds, n);
+                        skipOffsets = skipOffsets == null ? new int[n] : Arrays.copyOf(skipOffsets, n);
+                    }
+                    skipIds[b] = id;
+                    skipOffsets[b] = len;
+                }
+                writeVarint(id);
+            } else {
+                writeVarint(id - lastId);
+            }
+            writeVarint(tf);
+            lastId = id;
+            count++;
+        }
+
+        int blocks() {
+            return (count + BLOCK - 1) / BLOCK;
+        }
+
+        Cursor cursor() {
+            return new Cursor(this);
+        }
+
+        private void writeVarint(int v) {
+            if (len + 5 > buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            while ((v & ~0x7F) != 0) {
+                buf[len++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[len++] = (byte) v;
+        }
+    }
+
+    // forward-only reader over a posting list; id is END once exhausted
+    private static class Cursor {
+        static final int END = Integer.MAX_VALUE;
+
+        final PostingList list;
+        int index = -1;
+        int offset;
+        int id = -1;
+        int tf;
+
+        Cursor(PostingList list) {
+            this.list = list;
+        }
+
+        int next() {
+            if (++index >= list.count) return id = END;
+            int v = readVarint();
+            id = index % PostingList.BLOCK == 0 ? v : id + v;
+            tf = readVarint();
+            return id;
+        }
+
+        // first id >= target
+        int advance(int target) {
+            if (id >= target) return id;
+
+            // jump to the last block starting at or before target, if that is ahead of us
+            int b = index < 0 ? 1 : index / PostingList.BLOCK + 1;
+            int blocks = list.blocks();
+            if (b < blocks && list.skipIds[b] <= target) {
+                int lo = b, hi = blocks - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi + 1) >>> 1;
+                    if (list.skipIds[mid] <= target) lo = mid; else hi = mid - 1;
+                }
+                index = lo * PostingList.BLOCK - 1;
+                offset = list.skipOffsets[lo];
+            }
+            while (next() < target) { }
+            return id;
+        }
+
+        private int readVarint() {
+            byte[] buf = list.buf;
+            int v = 0, shift = 0;
+            byte b;
+            do { b = buf[offset++]; v |= (b & 0x7F) << shift; shift += 7; } while (b < 0);
+            return v;
+        }
+    }
+}
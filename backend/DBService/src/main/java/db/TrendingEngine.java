@@ -0,0 +1,275 @@
+package db;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Streaming trending hashtags, authors and posts. Activity goes into a count-min sketch with
+// forward-decayed counts (weight exp(lambda * (t - landmark)), scaled back on read), plus a
+// heavy-hitters table per kind and a ring of one-minute sketches for the last hour.
+public class TrendingEngine {
+
+    private static final Pattern HASHTAG = Pattern.compile("#(\\w+)");
+
+    private static final long HALF_LIFE_MS = 60L * 60 * 1000;
+    private static final double LAMBDA = Math.log(2) / HALF_LIFE_MS;
+    // rescale before exp() gets anywhere near overflow
+    private static final long RESCALE_AFTER_MS = 200 * HALF_LIFE_MS;
+
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 2048;
+    private static final int WINDOW_WIDTH = 512;
+    private static final int WINDOW_MINUTES = 60;
+    private static final int HEAVY_HITTERS = 100;
+    private static final int POST_CANDIDATES = 200;
+
+    private long landmark = Long.MIN_VALUE;
+
+    private final CountMinSketch decayed = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+    private final HeavyHitters hashtags = new HeavyHitters(HEAVY_HITTERS);
+    private final HeavyHitters authors = new HeavyHitters(HEAVY_HITTERS);
+
+    private final CountMinSketch[] windows = new CountMinSketch[WINDOW_MINUTES];
+    private final long[] windowMinute = new long[WINDOW_MINUTES];
+    private final long[] windowPosts = new long[WINDOW_MINUTES];
+
+    // min-heap on forward-decayed post score
+    private final PriorityQueue<Candidate> posts = new PriorityQueue<>();
+
+    public TrendingEngine() {
+        for (int i = 0; i < WINDOW_MINUTES; i++) {
+            windows[i] = new CountMinSketch(SKETCH_DEPTH, WINDOW_WIDTH);
+            windowMinute[i] = Long.MIN_VALUE;
+        }
+    }
+
+    public void add(Map<String,Object> post) {
+        // a future-dated post would push the landmark ahead and decay everything else away
+        long ts = Math.min(timestampOf(post), System.currentTimeMillis());
+        if (landmark == Long.MIN_VALUE) landmark = ts;
+        if (ts - landmark > RESCALE_AFTER_MS) rescale(ts);
+
+        double w = Math.exp(LAMBDA * (ts - landmark));
+        CountMinSketch window = windowFor(ts);
+
+        String author = (String) post.get("from");
+        if (author != null) {
+            String key = "@" + author;
+            decayed.add(key, w);
+            authors.offer(author, decayed.estimate(key));
+            if (window != null) window.add(key, 1);
+        }
+
+        Set<String> tags = hashtagsOf(post);
+        for (String tag : tags) {
+            String key = "#" + tag;
+            decayed.add(key, w);
+            hashtags.offer(tag, decayed.estimate(key));
+            if (window != null) window.add(key, 1);
+        }
+
+        Candidate c = new Candidate(heat(author, tags, ts) * w, post);
+        if (posts.size() < POST_CANDIDATES) {
+            posts.add(c);
+        } else if (c.compareTo(posts.peek()) > 0) {
+            posts.poll();
+            posts.add(c);
+        }
+    }
+
+    public List<Map<String,Object>> topHashtags(int k, long now) {
+        return top(hashtags, "#", "tag", k, now);
+    }
+
+    public List<Map<String,Object>> topAuthors(int k, long now) {
+        return top(authors, "@", "author", k, now);
+    }
+
+    // best-scoring recent posts accepted by visible, highest first
+    public List<Map<String,Object>> topPosts(int k, Predicate<Map<String,Object>> visible) {
+        List<Candidate> sorted = new ArrayList<>(posts);
+        sorted.sort(Comparator.reverseOrder());
+
+        List<Map<String,Object>> res = new ArrayList<>();
+        for (Candidate c : sorted) {
+            if (res.size() == k) break;
+            if (visible.test(c.post)) res.add(c.post);
+        }
+        return res;
+    }
+
+    // current score of any post: author/hashtag heat times freshness
+    public double score(Map<String,Object> post, long now) {
+        long ts = Math.min(timestampOf(post), now);
+        return heat((String) post.get("from"), hashtagsOf(post), now) * Math.exp(-LAMBDA * (now - ts));
+    }
+
+    // posts seen over the last WINDOW_MINUTES minutes
+    public long recentPosts(long now) {
+        long minute = now / 60_000;
+        long n = 0;
+        for (int i = 0; i < WINDOW_MINUTES; i++) {
+            if (windowMinute[i] > minute - WINDOW_MINUTES && windowMinute[i] <= minute) n += windowPosts[i];
+        }
+        return n;
+    }
+
+    private List<Map<String,Object>> top(HeavyHitters hh, String prefix, String field, int k, long now) {
+        double scale = landmark == Long.MIN_VALUE ? 0 : Math.exp(-LAMBDA * (now - landmark));
+        List<Map<String,Object>> res = new ArrayList<>();
+        for (String key : hh.top(k)) {
+            Map<String,Object> m = new LinkedHashMap<>();
+            m.put(field, key);
+            m.put("score", decayed.estimate(prefix + key) * scale);
+            m.put("lastHour", windowCount(prefix + key, now));
+            res.add(m);
+        }
+        return res;
+    }
+
+    // 1 + log-scaled decayed activity of the author and the post's hashtags, as of time t
+    private double heat(String author, Set<String> tags, long t) {
+        if (landmark == Long.MIN_VALUE) return 1;
+        double scale = Math.exp(-LAMBDA * (t - landmark));
+        double h = 1;
+        if (author != null) h += Math.log1p(decayed.estimate("@" + author) * scale);
+        for (String tag : tags) h += Math.log1p(decayed.estimate("#" + tag) * scale);
+        return h;
+    }
+
+    private long windowCount(String key, long now) {
+        long minute = now / 60_000;
+        long n = 0;
+        for (int i = 0; i < WINDOW_MINUTES; i++) {
+            if (windowMinute[i] > minute - WINDOW_MINUTES && windowMinute[i] <= minute) {
+                n += (long) windows[i].estimate(key);
+            }
+        }
+        return n;
+    }
+
+    // the one-minute bucket for ts, recycling it if it holds an older minute; null if ts is too old
+    private CountMinSketch windowFor(long ts) {
+        long minute = ts / 60_000;
+        int i = (int) Math.floorMod(minute, (long) WINDOW_MINUTES);
+        if (windowMinute[i] > minute) return null;
+        if (windowMinute[i] < minute) {
+            windows[i].clear();
+            windowMinute[i] = minute;
+            windowPosts[i] = 0;
+        }
+        windowPosts[i]++;
+        return windows[i];
+    }
+
+    private void rescale(long newLandmark) {
+        double f = Math.exp(-LAMBDA * (newLandmark - landmark));
+        decayed.scale(f);
+        hashtags.scale(f);
+        authors.scale(f);
+
+        List<Candidate> old = new ArrayList<>(posts);
+        posts.clear();
+        for (Candidate c : old) posts.add(new Candidate(c.score * f, c.post));
+
+        landmark = newLandmark;
+    }
+
+    private static Set<String> hashtagsOf(Map<String,Object> post) {
+        Set<String> tags = new HashSet<>();
+        Object text = post.get("text");
+        if (text == null) return tags;
+
+        Matcher m = HASHTAG.matcher(text.toString());
+        while (m.find()) tags.add(m.group(1).toLowerCase());
+        return tags;
+    }
+
+    private static long timestampOf(Map<String,Object> post) {
+        Object ts = post.get("timestamp");
+        return ts instanceof Number n ? n.longValue() : 0L;
+    }
+
+    private record Candidate(double score, Map<String,Object> post) implements Comparable<Candidate> {
+        @Override
+        public int compareTo(Candidate o) {
+            return Double.compare(score, o.score);
+        }
+    }
+
+    private static class CountMinSketch {
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        final double[][] cells;
+        final int width;
+
+        CountMinSketch(int depth, int width) {
+            this.cells = new double[depth][width];
+            this.width = width;
+        }
+
+        void add(String key, double w) {
+            int h = key.hashCode();
+            for (int d = 0; d < cells.length; d++) cells[d][index(h, d)] += w;
+        }
+
+        double estimate(String key) {
+            int h = key.hashCode();
+            double min = Double.MAX_VALUE;
+            for (int d = 0; d < cells.length; d++) min = Math.min(min, cells[d][index(h, d)]);
+            return min;
+        }
+
+        void scale(double f) {
+            for (double[] row : cells) for (int i = 0; i < row.length; i++) row[i] *= f;
+        }
+
+        void clear() {
+            for (double[] row : cells) Arrays.fill(row, 0);
+        }
+
+        private int index(int h, int d) {
+            int x = h * SEEDS[d % SEEDS.length] + d;
+            x ^= x >>> 16;
+            return Math.floorMod(x, width);
+        }
+    }
+
+    // bounded table of the keys with the highest sketch estimates
+    private static class HeavyHitters {
+        final int capacity;
+        final Map<String,Double> counts = new HashMap<>();
+
+        HeavyHitters(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void offer(String key, double estimate) {
+            if (counts.containsKey(key) || counts.size() < capacity) {
+                counts.put(key, estimate);
+                return;
+            }
+            Map.Entry<String,Double> min = null;
+            for (Map.Entry<String,Double> e : counts.entrySet()) {
+                if (min == null || e.getValue() < min.getValue()) min = e;
+            }
+            if (estimate > min.getValue()) {
+                counts.remove(min.getKey());
+                counts.put(key, estimate);
+            }
+        }
+
+        List<String> top(int k) {
+            List<Map.Entry<String,Double>> entries = new ArrayList<>(counts.entrySet());
+            entries.sort(Map.Entry.<String,Double>comparingByValue().reversed());
+            List<String> res = new ArrayList<>();
+            for (int i = 0; i < Math.min(k, entries.size()); i++) res.add(entries.get(i).getKey());
+            return res;
+        }
+
+        void scale(double f) {
+            counts.replaceAll((k, v) -> v * f);
+        }
+    }
+}
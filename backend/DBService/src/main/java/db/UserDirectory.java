@@ -0,0 +1,34 @@
+package db;
+
+import java.util.*;
+
+// Sorted index of every known username, for prefix search and cursor pagination.
+public class UserDirectory {
+
+    private final TreeSet<String> users = new TreeSet<>();
+
+    public void add(String user) {
+        if (user != null) users.add(user);
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    // up to limit users starting with prefix, in name order, strictly after cursor when one is given
+    public List<String> page(String prefix, String cursor, int limit) {
+        String p = prefix == null ? "" : prefix;
+        // start at whichever of prefix and cursor comes later; a cursor outside the prefix
+        // range just yields an empty page or the start of the range
+        NavigableSet<String> range = cursor == null || cursor.isEmpty() || cursor.compareTo(p) < 0
+                ? users.tailSet(p, true)
+                : users.tailSet(cursor, false);
+
+        List<String> res = new ArrayList<>(Math.min(limit, 64));
+        for (String u : range) {
+            if (res.size() == limit || !u.startsWith(p)) break;
+            res.add(u);
+        }
+        return res;
+    }
+}
@@ -0,0 +1,66 @@
+package db;
+
+import java.util.*;
+
+// Replays random follow/unfollow operations into FollowRecommender and compares its cached,
+// incrementally patched recommendations with a recommender rebuilt from scratch. Runs once with
+// the default cache and once with a budget small enough to force evictions and uncached users.
+// Standalone main, not part of the test run:
+//   java -cp target/classes:target/test-classes db.FollowRecommenderCheck [operations] [users]
+// Exits with status 1 on any mismatch.
+public class FollowRecommenderCheck {
+
+    // recommend() for a few users this often, so their counts get cached and then patched
+    private static final int WARM_EVERY = 50;
+    // rebuild from scratch and compare this often
+    private static final int CHECK_EVERY = 1_000;
+    private static final int USERS_PER_CHECK = 30;
+
+    public static void main(String[] args) {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+        int mismatches = run("default cache", new FollowRecommender(), operations, users)
+                + run("small cache", new FollowRecommender(2_048), operations, users);
+        if (mismatches > 0) System.exit(1);
+    }
+
+    private static int run(String label, FollowRecommender incremental, int operations, int users) {
+        Random rnd = new Random(3);
+        Map<String, Set<String>> graph = new HashMap<>();
+        int checks = 0, mismatches = 0;
+
+        for (int op = 0; op < operations; op++) {
+            String u = "u" + rnd.nextInt(users), t = "u" + rnd.nextInt(users);
+            if (u.equals(t)) continue;
+
+            if (rnd.nextInt(4) == 0) {
+                incremental.unfollow(u, t);
+                graph.getOrDefault(u, new HashSet<>()).remove(t);
+            } else {
+                incremental.follow(u, t);
+                graph.computeIfAbsent(u, k -> new HashSet<>()).add(t);
+            }
+
+            if (op % WARM_EVERY == 0) {
+                for (int i = 0; i < 3; i++) incremental.recommend("u" + rnd.nextInt(users), 10);
+            }
+            if (op % CHECK_EVERY == 0) {
+                FollowRecommender fresh = new FollowRecommender();
+                for (Map.Entry<String, Set<String>> e : graph.entrySet()) {
+                    for (String target : e.getValue()) fresh.follow(e.getKey(), target);
+                }
+                for (int i = 0; i < USERS_PER_CHECK; i++) {
+                    String q = "u" + rnd.nextInt(users);
+                    checks++;
+                    if (!incremental.recommend(q, 10).equals(fresh.recommend(q, 10))) {
+                        mismatches++;
+                        System.out.println(label + ": mismatch for " + q + " after " + op + " operations");
+                    }
+                }
+            }
+        }
+        System.out.printf("%s: %,d operations, %d checks, %d mismatches%n", label, operations, checks, mismatches);
+        return mismatches;
+    }
+}
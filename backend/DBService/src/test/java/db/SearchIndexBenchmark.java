@@ -0,0 +1,84 @@
+package db;
+
+import java.util.*;
+
+// Query latency of SearchIndex over a synthetic corpus. Standalone main, not part of the test run:
+//   java -Xmx4g -cp target/classes:target/test-classes db.SearchIndexBenchmark [docs] [queries]
+// Words follow a Zipf-like distribution, so "w0" is in most documents. Texts are drawn from a
+// shared pool to keep the corpus in memory; postings are still built per document.
+public class SearchIndexBenchmark {
+
+    private static final int VOCABULARY = 50_000;
+    private static final int AUTHORS = 100_000;
+    private static final int WORDS_PER_DOC = 8;
+    private static final int TEXT_POOL = 1 << 20;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final int DAYS = 30;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        Random rnd = new Random(42);
+
+        String[] texts = new String[TEXT_POOL];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < TEXT_POOL; i++) {
+            sb.setLength(0);
+            for (int w = 0; w < WORDS_PER_DOC; w++) sb.append('w').append(zipf(rnd)).append(' ');
+            texts[i] = sb.toString();
+        }
+        String[] authors = new String[AUTHORS];
+        for (int i = 0; i < AUTHORS; i++) authors[i] = "user" + i;
+
+        SearchIndex index = new SearchIndex(DAY_MS, "from");
+        long start = System.nanoTime();
+        long t0 = System.currentTimeMillis() - DAYS * DAY_MS;
+        for (int i = 0; i < n; i++) {
+            index.add(Map.of(
+                    "from", authors[rnd.nextInt(AUTHORS)],
+                    "text", texts[rnd.nextInt(TEXT_POOL)],
+                    "timestamp", t0 + (long) i * DAYS * DAY_MS / n));
+        }
+        System.out.printf("indexed %,d docs in %.1f s%n", n, (System.nanoTime() - start) / 1e9);
+
+        Set<String> many = sample(authors, 1_000, rnd);
+        Set<String> few = sample(authors, 2, rnd);
+        String[] cases = {"w0", "w0 w1", "w7", "w300", "w0 w4000"};
+
+        System.out.printf("%-10s %-8s %-10s %12s %12s %8s%n", "query", "sort", "visible", "avgMs", "maxMs", "hits");
+        for (String q : cases) {
+            for (boolean byRelevance : new boolean[]{false, true}) {
+                run(index, q, byRelevance, many, "1000 users", queries);
+                run(index, q, byRelevance, few, "2 users", queries);
+            }
+        }
+    }
+
+    private static void run(SearchIndex index, String q, boolean byRelevance, Set<String> owners,
+                            String label, int queries) {
+        int hits = 0;
+        for (int i = 0; i < Math.min(queries, 20); i++) hits = index.search(q, 20, byRelevance, owners).size();
+
+        long total = 0, max = 0;
+        for (int i = 0; i < queries; i++) {
+            long s = System.nanoTime();
+            hits = index.search(q, 20, byRelevance, owners).size();
+            long t = System.nanoTime() - s;
+            total += t;
+            max = Math.max(max, t);
+        }
+        System.out.printf("%-10s %-8s %-10s %12.3f %12.3f %8d%n", q, byRelevance ? "relevance" : "recent",
+                label, total / 1e6 / queries, max / 1e6, hits);
+    }
+
+    // rank r with probability roughly proportional to 1 / (r + 1)
+    private static int zipf(Random rnd) {
+        return (int) Math.min(VOCABULARY - 1, Math.exp(rnd.nextDouble() * Math.log(VOCABULARY + 1.0)) - 1);
+    }
+
+    private static Set<String> sample(String[] authors, int count, Random rnd) {
+        Set<String> s = new HashSet<>();
+        while (s.size() < count) s.add(authors[rnd.nextInt(authors.length)]);
+        return s;
+    }
+}
@@ -0,0 +1,94 @@
+package db;
+
+import java.util.*;
+
+// Compares SearchIndex against a brute-force scan over the same corpus: every query must return
+// the same hits, newest first for recency and the full match set for relevance. Covers posting
+// lists long enough to use skip blocks and owner sets from one to almost every author, so both
+// the owner-driven and the term-driven intersection run. Standalone main, not part of the test run:
+//   java -cp target/classes:target/test-classes db.SearchIndexCheck [docs] [queries]
+// Exits with status 1 on any mismatch.
+public class SearchIndexCheck {
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final int USERS = 500;
+    private static final int DAYS = 40;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        Random rnd = new Random(1);
+
+        SearchIndex index = new SearchIndex(DAY_MS, "from", "to");
+        List<Map<String,Object>> all = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            // a handful of very common terms ("t0".."t4") and a long tail
+            StringBuilder sb = new StringBuilder();
+            int words = 1 + rnd.nextInt(6);
+            for (int w = 0; w < words; w++) sb.append('t').append(rnd.nextInt(w % 2 == 0 ? 5 : 300)).append(' ');
+
+            Map<String,Object> doc = new HashMap<>();
+            doc.put("from", "u" + rnd.nextInt(USERS));
+            doc.put("to", "u" + rnd.nextInt(USERS));
+            doc.put("text", sb.toString());
+            doc.put("timestamp", (long) i * DAYS * DAY_MS / n + rnd.nextInt(1000));
+            index.add(doc);
+            all.add(doc);
+        }
+
+        int mismatches = 0;
+        for (int q = 0; q < queries; q++) {
+            String query = "t" + rnd.nextInt(5)
+                    + (q % 2 == 0 ? " t" + rnd.nextInt(300) : "")
+                    + (q % 5 == 0 ? " t" + rnd.nextInt(5) : "");
+            int ownerCount = q % 3 == 0 ? 1 : q % 3 == 1 ? 30 : 450;
+            Set<String> owners = new HashSet<>();
+            while (owners.size() < ownerCount) owners.add("u" + rnd.nextInt(USERS));
+
+            List<Map<String,Object>> expected = bruteForce(all, query, owners);
+
+            List<Map<String,Object>> recent = index.search(query, 50, false, owners);
+            List<Map<String,Object>> top = expected.subList(0, Math.min(50, expected.size()));
+            if (!sameByTimestamp(recent, top)) {
+                mismatches++;
+                System.out.println("recency mismatch: \"" + query + "\" with " + ownerCount + " owners");
+            }
+
+            List<Map<String,Object>> relevant = index.search(query, Integer.MAX_VALUE, true, owners);
+            Set<Map<String,Object>> got = Collections.newSetFromMap(new IdentityHashMap<>());
+            got.addAll(relevant);
+            Set<Map<String,Object>> want = Collections.newSetFromMap(new IdentityHashMap<>());
+            want.addAll(expected);
+            if (relevant.size() != expected.size() || !got.equals(want)) {
+                mismatches++;
+                System.out.println("relevance mismatch: \"" + query + "\" with " + ownerCount + " owners");
+            }
+        }
+
+        System.out.printf("%,d docs, %d queries, %d mismatches%n", n, queries, mismatches);
+        if (mismatches > 0) System.exit(1);
+    }
+
+    // every doc visible to owners containing all query terms, newest first
+    private static List<Map<String,Object>> bruteForce(List<Map<String,Object>> all, String query, Set<String> owners) {
+        Set<String> terms = SearchIndex.termFrequencies(query).keySet();
+        List<Map<String,Object>> res = new ArrayList<>();
+        for (Map<String,Object> d : all) {
+            if (!owners.contains(d.get("from")) && !owners.contains(d.get("to"))) continue;
+            if (SearchIndex.termFrequencies((String) d.get("text")).keySet().containsAll(terms)) res.add(d);
+        }
+        res.sort((a, b) -> Long.compare((Long) b.get("timestamp"), (Long) a.get("timestamp")));
+        return res;
+    }
+
+    // same docs in the same order, allowing equal timestamps to come in either order
+    private static boolean sameByTimestamp(List<Map<String,Object>> got, List<Map<String,Object>> want) {
+        if (got.size() != want.size()) return false;
+        for (int i = 0; i < got.size(); i++) {
+            if (got.get(i) != want.get(i) && !got.get(i).get("timestamp").equals(want.get(i).get("timestamp"))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -8,7 +8,10 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 import org.springframework.core.ParameterizedTypeReference;
 
 import java.util.*;
@@ -20,18 +23,39 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ChatController {
 
     private final SimpMessagingTemplate messagingTemplate;
+    private final OutboundQueueGuard outboundQueueGuard;
+    private final TimelineFanout fanout;
+    private final InboundRateLimiter rateLimiter;
+    private final RejectionNotifier notifier;
     private final RestTemplate rest = new RestTemplate();
     private final String DB_SERVICE_BASE;
 
     private final Map<String, Map<String, Long>> lastSeenTimestamp = new ConcurrentHashMap<>();
+    // newest timeline post delivered to each user, shared by fan-out and polling
+    private final Map<String, TimelineWatermark> timelineSeen = new ConcurrentHashMap<>();
     private final Set<String> connectedUsers = ConcurrentHashMap.newKeySet();
 
     // Track latest follow state per user
     private final Map<String, Set<String>> userFollows = new ConcurrentHashMap<>();
+    // follow-log version each user's cache is synced to
+    private final Map<String, Long> followVersions = new ConcurrentHashMap<>();
+
+    // While the DB service is shedding load (503/429), don't call it before these times. It sheds
+    // reads before writes, so a shed poll only holds back the pollers and user sends still go out.
+    private volatile long readRetryAt;
+    private volatile long writeRetryAt;
 
     public ChatController(SimpMessagingTemplate messagingTemplate,
+                          OutboundQueueGuard outboundQueueGuard,
+                          TimelineFanout fanout,
+                          InboundRateLimiter rateLimiter,
+                          RejectionNotifier notifier,
                           @Value("${db.service.base:http://localhost:9000}") String dbServiceBase) {
         this.messagingTemplate = messagingTemplate;
+        this.outboundQueueGuard = outboundQueueGuard;
+        this.fanout = fanout;
+        this.rateLimiter = rateLimiter;
+        this.notifier = notifier;
         this.DB_SERVICE_BASE = dbServiceBase;
     }
 
@@ -41,6 +65,24 @@ public class ChatController {
         return ResponseEntity.ok("ok");
     }
 
+    // outbound queue metrics: dropped, coalesced and late frames, slow-consumer disconnects
+    @GetMapping("/ws-stats")
+    public Map<String,Object> wsStats() {
+        return outboundQueueGuard.stats();
+    }
+
+    // admitted vs rejected /app frames
+    @GetMapping("/rate-limit-stats")
+    public Map<String,Object> rateLimitStats() {
+        return rateLimiter.stats();
+    }
+
+    // progress and lag of recent timeline fan-outs
+    @GetMapping("/fanout-stats")
+    public List<Map<String,Object>> fanoutStats() {
+        return fanout.recentJobs();
+    }
+
     @PostMapping("/follow")
     public void follow(@RequestParam String currentUser, @RequestParam String targetUser){
         Map<String,String> payload = Map.of("action","follow","currentUser",currentUser,"targetUser",targetUser);
@@ -68,9 +110,41 @@ public class ChatController {
     }
 
     @GetMapping("/users")
-    public List<Map<String,Object>> getUsers(@RequestParam String currentUser){
+    public Map<String,Object> getUsers(@RequestParam String currentUser,
+                                       @RequestParam(defaultValue = "") String prefix,
+                                       @RequestParam(required = false) String cursor,
+                                       @RequestParam(defaultValue = "100") int limit){
+        UriComponentsBuilder url = UriComponentsBuilder.fromHttpUrl(DB_SERVICE_BASE + "/db/users")
+                .queryParam("currentUser", currentUser)
+                .queryParam("prefix", prefix)
+                .queryParam("limit", limit);
+        if (cursor != null) url.queryParam("cursor", cursor);
+
+        ResponseEntity<Map<String,Object>> r = rest.exchange(
+                url.build().encode().toUri(),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<Map<String,Object>>() {}
+        );
+        return r.getBody();
+    }
+
+    @GetMapping("/following")
+    public Map<String,Object> getFollowing(@RequestParam String currentUser){
+        ResponseEntity<Map<String,Object>> r = rest.exchange(
+                DB_SERVICE_BASE + "/db/following?currentUser=" + currentUser,
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<Map<String,Object>>() {}
+        );
+        return r.getBody();
+    }
+
+    @GetMapping("/recommendations")
+    public List<Map<String,Object>> getRecommendations(@RequestParam String currentUser,
+                                                       @RequestParam(defaultValue = "10") int k){
         ResponseEntity<List<Map<String,Object>>> r = rest.exchange(
-                DB_SERVICE_BASE + "/db/users?currentUser=" + currentUser,
+                DB_SERVICE_BASE + "/db/recommendations?currentUser=" + currentUser + "&k=" + k,
                 HttpMethod.GET,
                 null,
                 new ParameterizedTypeReference<List<Map<String,Object>>>() {}
@@ -103,7 +177,7 @@ public class ChatController {
     // --- WebSocket message handling ---
     @MessageMapping("/chat")
     public synchronized void sendChat(ChatMessage msg){
-        rest.postForEntity(DB_SERVICE_BASE + "/db/chats", msg, Void.class);
+        if (!persist("/db/chats", msg, msg.getFrom(), "/app/chat")) return;
 
         connectedUsers.add(msg.getFrom());
         connectedUsers.add(msg.getTo());
@@ -118,43 +192,90 @@ public class ChatController {
     }
 
     @MessageMapping("/post")
-    public synchronized void postTimeline(PostMessage msg){
+    public void postTimeline(PostMessage msg){
         // Save to DB
-        rest.postForEntity(DB_SERVICE_BASE + "/db/posts", msg, Void.class);
+        if (!persist("/db/posts", msg, msg.getFrom(), "/app/post")) return;
 
-        // Fetch followers
-        ResponseEntity<List<String>> r = rest.exchange(
-                DB_SERVICE_BASE + "/db/followersOf?user=" + msg.getFrom(),
-                HttpMethod.GET,
-                null,
-                new ParameterizedTypeReference<List<String>>() {}
-        );
+        long ts = msg.getTimestamp();
 
-        List<String> followers = r.getBody();
+        // Sender first, so the acknowledgement doesn't wait for fan-out
+        connectedUsers.add(msg.getFrom());
+        if (claimTimeline(msg.getFrom(), msg.getFrom(), ts)) {
+            messagingTemplate.convertAndSend("/topic/timeline-" + msg.getFrom(), msg);
+        }
 
-        long ts = msg.getTimestamp();
+        // LIVE dispatch to connected followers in the background; skips followers the
+        // poller already delivered this post to
+        fanout.submit(msg, () -> followersOf(msg.getFrom()), f -> {
+            connectedUsers.add(f);
+            return claimTimeline(f, msg.getFrom(), ts);
+        });
+    }
 
-        // LIVE dispatch + update timestamps so poller won't send it again
-        if (followers != null) {
-            for (String f : followers) {
-                connectedUsers.add(f);
+    // Saves a chat message or post. On failure the sender is told on /topic/errors-{user} and
+    // nothing is broadcast, so a message never looks sent when it wasn't stored.
+    private boolean persist(String path, Object msg, String from, String destination) {
+        if (dbBackingOff(true)) {
+            notifier.reject(from, destination, "server-busy", writeRetryAt - System.currentTimeMillis());
+            return false;
+        }
+        try {
+            rest.postForEntity(DB_SERVICE_BASE + path, msg, Void.class);
+            return true;
+        } catch (RestClientException e) {
+            boolean shed = noteDbFailure(e, true);
+            if (!shed) System.err.println("Saving to " + path + " failed for " + from + ": " + e.getMessage());
+            notifier.reject(from, destination, shed ? "server-busy" : "not-saved",
+                    Math.max(0, writeRetryAt - System.currentTimeMillis()));
+            return false;
+        }
+    }
 
-                lastSeenTimestamp
-                        .computeIfAbsent(f, k -> new ConcurrentHashMap<>())
-                        .put("__timeline__", ts);
+    private boolean dbBackingOff(boolean write) {
+        return System.currentTimeMillis() < (write ? writeRetryAt : readRetryAt);
+    }
 
-                messagingTemplate.convertAndSend("/topic/timeline-" + f, msg);
+    // Returns true if the DB service shed the request; backs off for its Retry-After
+    // (seconds, at least one) and logs once per back-off rather than once per call.
+    // A shed write backs off reads too, since those are shed first.
+    private boolean noteDbFailure(Exception e, boolean write) {
+        if (!(e instanceof HttpStatusCodeException h)) return false;
+        int status = h.getStatusCode().value();
+        if (status != 503 && status != 429) return false;
+
+        long seconds = 1;
+        String retryAfter = h.getResponseHeaders() == null ? null : h.getResponseHeaders().getFirst("Retry-After");
+        if (retryAfter != null) {
+            try {
+                seconds = Math.max(1, Long.parseLong(retryAfter.trim()));
+            } catch (NumberFormatException ignored) {
+                // HTTP-date form; keep the default
             }
         }
+        boolean wasBackingOff = dbBackingOff(write);
+        long until = System.currentTimeMillis() + seconds * 1000;
+        readRetryAt = Math.max(readRetryAt, until);
+        if (write) writeRetryAt = Math.max(writeRetryAt, until);
+        if (!wasBackingOff) {
+            System.err.println("DB service is shedding " + (write ? "writes" : "reads") + " (" + status
+                    + "), backing off for " + seconds + " s");
+        }
+        return true;
+    }
 
-        // Also update for sender (same reason)
-        connectedUsers.add(msg.getFrom());
-
-        lastSeenTimestamp
-                .computeIfAbsent(msg.getFrom(), k -> new ConcurrentHashMap<>())
-                .put("__timeline__", ts);
+    private List<String> followersOf(String user) {
+        ResponseEntity<List<String>> r = rest.exchange(
+                DB_SERVICE_BASE + "/db/followersOf?user=" + user,
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<String>>() {}
+        );
+        return r.getBody();
+    }
 
-        messagingTemplate.convertAndSend("/topic/timeline-" + msg.getFrom(), msg);
+    // true if this post hasn't been delivered to user yet; marks it delivered
+    private boolean claimTimeline(String user, String author, long ts) {
+        return timelineSeen.computeIfAbsent(user, k -> new TimelineWatermark()).claim(author, ts);
     }
 
     private void pollTimeline() {
@@ -170,36 +291,21 @@ public class ChatController {
 
                 if (posts == null) continue;
 
-                // last seen
-                long lastTs = lastSeenTimestamp
-                        .computeIfAbsent(user, k -> new ConcurrentHashMap<>())
-                        .getOrDefault("__timeline__", 0L);
-
-                long maxTs = lastTs;
-
-                for (Map<String,Object> p : posts) {
+                // oldest first, claiming each post so a concurrent fan-out doesn't send it again
+                List<Map<String,Object>> sorted = new ArrayList<>(posts);
+                sorted.sort(Comparator.comparingLong(p -> ((Number) p.get("timestamp")).longValue()));
+                for (Map<String,Object> p : sorted) {
                     long ts = ((Number) p.get("timestamp")).longValue();
-
-                    if (ts > lastTs) {
-                        PostMessage pm = new PostMessage(
-                                (String) p.get("from"),
-                                (String) p.get("text"),
-                                ts
-                        );
-
-                        messagingTemplate.convertAndSend("/topic/timeline-" + user, pm);
-
-                        // Track highest timestamp in this poll cycle
-                        if (ts > maxTs) {
-                            maxTs = ts;
-                        }
+                    String from = (String) p.get("from");
+                    if (claimTimeline(user, from, ts)) {
+                        messagingTemplate.convertAndSend("/topic/timeline-" + user,
+                                new PostMessage(from, (String) p.get("text"), ts));
                     }
                 }
 
-                // Update only once after all posts are processed
-                lastSeenTimestamp.get(user).put("__timeline__", maxTs);
-
             } catch (Exception e) {
+                // shed: stop this round, the remaining users would be shed too
+                if (noteDbFailure(e, false)) return;
                 System.err.println("Polling timeline failed for user " + user + ": " + e.getMessage());
             }
         }
@@ -209,9 +315,10 @@ public class ChatController {
     // --- Polling mechanism for messages, follow/unfollow and timeline ---
     @Scheduled(fixedDelay = 3000)
     public void pollUpdates() {
+        if (dbBackingOff(false)) return;
         pollMessages();
-        pollFollows();
-        pollTimeline();
+        if (!dbBackingOff(false)) pollFollows();
+        if (!dbBackingOff(false)) pollTimeline();
     }
 
     private void pollMessages() {
@@ -248,6 +355,8 @@ public class ChatController {
                     }
                 }
             } catch (Exception e) {
+                // shed: stop this round, the remaining users would be shed too
+                if (noteDbFailure(e, false)) return;
                 System.err.println("Polling messages failed for user " + user + ": " + e.getMessage());
             }
         }
@@ -256,36 +365,70 @@ public class ChatController {
     private void pollFollows() {
         for (String user : connectedUsers) {
             try {
-                // fetch latest following from DB
-                ResponseEntity<List<Map<String,Object>>> r = rest.exchange(
-                        DB_SERVICE_BASE + "/db/users?currentUser=" + user,
+                // fetch follow changes since the last poll (or the full set the first time)
+                String url = DB_SERVICE_BASE + "/db/following?currentUser=" + user;
+                Long since = followVersions.get(user);
+                if (since != null) url += "&since=" + since;
+
+                Map<String,Object> r = rest.exchange(
+                        url,
                         HttpMethod.GET,
                         null,
-                        new ParameterizedTypeReference<List<Map<String,Object>>>() {}
-                );
-                List<Map<String,Object>> users = r.getBody();
-                if (users == null) continue;
+                        new ParameterizedTypeReference<Map<String,Object>>() {}
+                ).getBody();
+                if (r == null) continue;
 
                 Set<String> currentFollow = userFollows.computeIfAbsent(user, k -> ConcurrentHashMap.newKeySet());
-                for (Map<String,Object> u : users) {
-                    String username = (String) u.get("username");
-                    boolean followed = (Boolean) u.get("followed");
-                    if (followed && !currentFollow.contains(username)) {
-                        currentFollow.add(username);
-                        messagingTemplate.convertAndSend("/topic/follow-" + user,
-                                Map.of("action","follow","targetUser",username));
-                    } else if (!followed && currentFollow.contains(username)) {
-                        currentFollow.remove(username);
-                        messagingTemplate.convertAndSend("/topic/follow-" + user,
-                                Map.of("action","unfollow","targetUser",username));
+                if (Boolean.TRUE.equals(r.get("full"))) {
+                    Set<String> latest = new HashSet<>();
+                    for (Object o : (List<?>) r.get("following")) latest.add((String) o);
+
+                    for (String username : latest) {
+                        if (currentFollow.add(username)) sendFollowEvent(user, "follow", username);
+                    }
+                    for (String username : new ArrayList<>(currentFollow)) {
+                        if (!latest.contains(username) && currentFollow.remove(username)) {
+                            sendFollowEvent(user, "unfollow", username);
+                        }
+                    }
+                } else {
+                    for (Object o : (List<?>) r.get("added")) {
+                        if (currentFollow.add((String) o)) sendFollowEvent(user, "follow", (String) o);
+                    }
+                    for (Object o : (List<?>) r.get("removed")) {
+                        if (currentFollow.remove((String) o)) sendFollowEvent(user, "unfollow", (String) o);
                     }
                 }
+                followVersions.put(user, ((Number) r.get("version")).longValue());
             } catch (Exception e) {
+                // shed: stop this round, the remaining users would be shed too
+                if (noteDbFailure(e, false)) return;
                 System.err.println("Polling follows failed for user " + user + ": " + e.getMessage());
             }
         }
     }
 
+    private void sendFollowEvent(String user, String action, String targetUser) {
+        messagingTemplate.convertAndSend("/topic/follow-" + user,
+                Map.of("action",action,"targetUser",targetUser));
+    }
+
+    // Newest post timestamp delivered to one user, plus the authors already delivered at exactly
+    // that timestamp, so two posts in the same millisecond are both sent, and each only once.
+    private static class TimelineWatermark {
+        private long ts;
+        private final Set<String> authorsAtTs = new HashSet<>();
+
+        synchronized boolean claim(String author, long postTs) {
+            if (postTs < ts) return false;
+            if (postTs > ts) {
+                ts = postTs;
+                authorsAtTs.clear();
+            }
+            return authorsAtTs.add(author);
+        }
+    }
+
     // --- Data classes ---
     public static class ChatMessage {
         private String from, to, text;
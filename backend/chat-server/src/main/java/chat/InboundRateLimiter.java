@@ -0,0 +1,166 @@
+package chat;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Token buckets per user and per node for STOMP SEND frames to /app/**. Frames over either
+// limit are dropped before they reach the controllers, and the sender gets at most one notice
+// per retry window on /topic/errors-{user}.
+// Each session is bound to one user, once: the CONNECT "login" header, else its first timeline
+// subscription, else the "from" of its first /app frame. Frames whose "from" names anyone else
+// are dropped, so a client can neither dodge its limit nor spend someone else's.
+@Component
+public class InboundRateLimiter implements ChannelInterceptor {
+
+    private static final String APP_PREFIX = "/app/";
+    private static final String TIMELINE_PREFIX = "/topic/timeline-";
+    private static final String USER_ATTR = "rateLimitUser";
+    // floor for the gap between two rejection notices to the same user
+    private static final long MIN_NOTICE_INTERVAL_MS = 1000;
+
+    private final RejectionNotifier notifier;
+    private final double userPerSecond, userBurst;
+    private final TokenBucket node;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final CBORFactory cborFactory = new CBORFactory();
+
+    // user -> bucket
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejectedUser = new AtomicLong();
+    private final AtomicLong rejectedNode = new AtomicLong();
+    private final AtomicLong rejectedSender = new AtomicLong();
+    private final AtomicLong noticesSuppressed = new AtomicLong();
+
+    public InboundRateLimiter(RejectionNotifier notifier,
+                              @Value("${ratelimit.user.per-second:5}") double userPerSecond,
+                              @Value("${ratelimit.user.burst:20}") double userBurst,
+                              @Value("${ratelimit.node.per-second:2000}") double nodePerSecond,
+                              @Value("${ratelimit.node.burst:4000}") double nodeBurst) {
+        this.notifier = notifier;
+        this.userPerSecond = userPerSecond;
+        this.userBurst = userBurst;
+        this.node = new TokenBucket(nodePerSecond, nodeBurst);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+
+        if (type == SimpMessageType.CONNECT) {
+            String login = StompHeaderAccessor.wrap(message).getLogin();
+            if (login != null && !login.isEmpty()) bind(message, login);
+            return message;
+        }
+        if (type == SimpMessageType.SUBSCRIBE) {
+            if (destination != null && destination.startsWith(TIMELINE_PREFIX)) {
+                bind(message, destination.substring(TIMELINE_PREFIX.length()));
+            }
+            return message;
+        }
+        if (type != SimpMessageType.MESSAGE || destination == null || !destination.startsWith(APP_PREFIX)) {
+            return message;
+        }
+
+        String from = senderOf(message);
+        String user = bind(message, from);
+        if (user == null || !user.equals(from)) {
+            rejectedSender.incrementAndGet();
+            System.err.println("Dropped " + destination + " frame from session "
+                    + SimpMessageHeaderAccessor.getSessionId(message.getHeaders())
+                    + " bound to " + user + ": payload says from=" + from);
+            return null;
+        }
+
+        TokenBucket bucket = buckets.computeIfAbsent(user, k -> new TokenBucket(userPerSecond, userBurst));
+        if (!bucket.tryConsume()) {
+            rejectedUser.incrementAndGet();
+            notifyRejected(bucket, user, destination, "rate-limited", bucket.retryAfterMs());
+            return null;
+        }
+        if (!node.tryConsume()) {
+            rejectedNode.incrementAndGet();
+            notifyRejected(bucket, user, destination, "server-busy", node.retryAfterMs());
+            return null;
+        }
+        admitted.incrementAndGet();
+        return message;
+    }
+
+    // drop buckets that have refilled completely; users that went away don't keep theirs forever
+    @Scheduled(fixedDelayString = "${ratelimit.evict-ms:60000}")
+    public void evictIdle() {
+        buckets.values().removeIf(TokenBucket::isFull);
+    }
+
+    public Map<String,Object> stats() {
+        Map<String,Object> m = new LinkedHashMap<>();
+        m.put("admitted", admitted.get());
+        m.put("rejectedUser", rejectedUser.get());
+        m.put("rejectedNode", rejectedNode.get());
+        m.put("rejectedSender", rejectedSender.get());
+        m.put("noticesSuppressed", noticesSuppressed.get());
+        m.put("trackedClients", buckets.size());
+        return m;
+    }
+
+    private void notifyRejected(TokenBucket bucket, String user, String destination, String error, long retryAfterMs) {
+        if (bucket.claimNotice(Math.max(retryAfterMs, MIN_NOTICE_INTERVAL_MS))) {
+            notifier.reject(user, destination, error, retryAfterMs);
+        } else {
+            noticesSuppressed.incrementAndGet();
+        }
+    }
+
+    // the user this session is bound to, binding it to candidate if it isn't bound yet
+    private static String bind(Message<?> message, String candidate) {
+        Map<String, Object> attrs = SimpMessageHeaderAccessor.getSessionAttributes(message.getHeaders());
+        if (attrs == null) return candidate;
+        if (candidate == null) return (String) attrs.get(USER_ATTR);
+        Object bound = attrs.putIfAbsent(USER_ATTR, candidate);
+        return bound != null ? (String) bound : candidate;
+    }
+
+    // top-level "from" of a JSON or CBOR payload, read without building a tree
+    private String senderOf(Message<?> message) {
+        if (!(message.getPayload() instanceof byte[] payload)) return null;
+        Object type = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        boolean cbor = type instanceof MimeType m ? CborMessageConverter.APPLICATION_CBOR.isCompatibleWith(m)
+                : type instanceof String t && t.startsWith("application/cbor");
+
+        try (JsonParser p = cbor ? cborFactory.createParser(payload) : jsonFactory.createParser(payload)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                if ("from".equals(field)) return value == JsonToken.VALUE_STRING ? p.getText() : null;
+                p.skipChildren();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return null;
+    }
+}
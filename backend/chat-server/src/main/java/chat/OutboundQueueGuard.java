@@ -0,0 +1,290 @@
+package chat;
+
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded per-session outbound queue (frames and bytes), drained on a shared flush pool. When a
+// client can't keep up, the overflow policy decides what happens (DROP_OLDEST, COALESCE by destination, or
+// DISCONNECT), so one slow socket only hurts itself. Sends blocked longer than sendTimeLimitMs
+// get the session closed by the watchdog.
+public class OutboundQueueGuard {
+
+    public enum OverflowPolicy { DROP_OLDEST, COALESCE, DISCONNECT }
+
+    private final int queueLimit;
+    private final long queueLimitBytes;
+    private final OverflowPolicy policy;
+    private final long sendTimeLimitMs;
+    private final long lateFrameMs;
+    private final ThreadPoolTaskExecutor flushExecutor = new ThreadPoolTaskExecutor();
+
+    private final Map<String, GuardedSession> sessions = new ConcurrentHashMap<>();
+
+    // --- metrics ---
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong late = new AtomicLong();
+    private final AtomicLong disconnected = new AtomicLong();
+    private final AtomicLong flushRejected = new AtomicLong();
+
+    public OutboundQueueGuard(int queueLimit, long queueLimitBytes, OverflowPolicy policy, long sendTimeLimitMs,
+                              long lateFrameMs, int flushThreads, int flushQueueCapacity) {
+        this.queueLimit = queueLimit;
+        this.queueLimitBytes = queueLimitBytes;
+        this.policy = policy;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.lateFrameMs = lateFrameMs;
+
+        // Every thread is a core thread, so the pool starts a new thread before it queues and a few
+        // stalled sends don't park other sessions' flushes behind them; idle threads exit. Each
+        // session has at most one pending flush, so the queue only fills past that many sessions.
+        flushExecutor.setCorePoolSize(flushThreads);
+        flushExecutor.setMaxPoolSize(flushThreads);
+        flushExecutor.setAllowCoreThreadTimeOut(true);
+        flushExecutor.setQueueCapacity(flushQueueCapacity);
+        flushExecutor.setThreadNamePrefix("ws-flush-");
+        flushExecutor.initialize();
+    }
+
+    public WebSocketHandlerDecoratorFactory decoratorFactory() {
+        return handler -> new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                GuardedSession guarded = new GuardedSession(session);
+                sessions.put(session.getId(), guarded);
+                super.afterConnectionEstablished(guarded);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+                GuardedSession guarded = sessions.remove(session.getId());
+                if (guarded != null) guarded.clear();
+                super.afterConnectionClosed(session, status);
+            }
+        };
+    }
+
+    // Closes sessions stuck in a send past the time limit, which also frees their flush thread.
+    @Scheduled(fixedDelayString = "${ws.session.watchdog-ms:1000}")
+    public void watchdog() {
+        long now = System.currentTimeMillis();
+        for (GuardedSession s : sessions.values()) {
+            long started = s.sendStartedAt;
+            if (started > 0 && now - started > sendTimeLimitMs) {
+                s.abort("Send time " + (now - started) + " ms exceeded the limit");
+            }
+        }
+    }
+
+    public Map<String,Object> stats() {
+        long queued = 0;
+        for (GuardedSession s : sessions.values()) queued += s.size();
+
+        Map<String,Object> m = new LinkedHashMap<>();
+        m.put("policy", policy.name());
+        m.put("queueLimit", queueLimit);
+        m.put("queueLimitBytes", queueLimitBytes);
+        m.put("sessions", sessions.size());
+        m.put("queued", queued);
+        m.put("sent", sent.get());
+        m.put("dropped", dropped.get());
+        m.put("coalesced", coalesced.get());
+        m.put("late", late.get());
+        m.put("disconnected", disconnected.get());
+        m.put("flushThreads", flushExecutor.getActiveCount());
+        m.put("flushQueued", flushExecutor.getQueueSize());
+        m.put("flushRejected", flushRejected.get());
+        return m;
+    }
+
+    public void shutdown() {
+        flushExecutor.shutdown();
+    }
+
+    private record Frame(WebSocketMessage<?> message, long enqueuedAt, int bytes) {}
+
+    private class GuardedSession extends WebSocketSessionDecorator {
+        private final Deque<Frame> queue = new ArrayDeque<>(); // guarded by itself
+        private long queuedBytes; // guarded by queue
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private volatile long sendStartedAt;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        GuardedSession(WebSocketSession delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            if (closed.get()) return;
+
+            long now = System.currentTimeMillis();
+            long started = sendStartedAt;
+            if (started > 0 && now - started > sendTimeLimitMs) {
+                limitExceeded("Send time " + (now - started) + " ms exceeded the limit");
+            }
+
+            int bytes = message.getPayloadLength();
+            synchronized (queue) {
+                while (!queue.isEmpty()
+                        && (queue.size() >= queueLimit || queuedBytes + bytes > queueLimitBytes)) {
+                    switch (policy) {
+                        case DISCONNECT -> limitExceeded("Outbound queue of " + queue.size() + " frames / "
+                                + queuedBytes + " bytes is full");
+                        case COALESCE -> {
+                            if (removeSameDestination(message)) coalesced.incrementAndGet();
+                            else { removeFirst(); dropped.incrementAndGet(); }
+                        }
+                        default -> { removeFirst(); dropped.incrementAndGet(); }
+                    }
+                }
+                queue.addLast(new Frame(message, now, bytes));
+                queuedBytes += bytes;
+            }
+            scheduleFlush();
+        }
+
+        int size() {
+            synchronized (queue) { return queue.size(); }
+        }
+
+        void clear() {
+            closed.set(true);
+            synchronized (queue) {
+                queue.clear();
+                queuedBytes = 0;
+            }
+        }
+
+        private void limitExceeded(String reason) {
+            if (closed.compareAndSet(false, true)) disconnected.incrementAndGet();
+            clear();
+            throw new SessionLimitExceededException(reason + " for session " + getId(),
+                    CloseStatus.SESSION_NOT_RELIABLE);
+        }
+
+        // Closes the underlying socket from outside the send path. Closing off-thread because
+        // the close handshake can block on the same stalled socket.
+        void abort(String reason) {
+            if (!closed.compareAndSet(false, true)) return;
+            disconnected.incrementAndGet();
+            clear();
+            System.err.println(reason + " for session " + getId() + ", closing");
+            WebSocketSession delegate = getDelegate();
+            CompletableFuture.runAsync(() -> {
+                try {
+                    delegate.close(CloseStatus.SESSION_NOT_RELIABLE);
+                } catch (IOException e) {
+                    System.err.println("Close failed for session " + delegate.getId() + ": " + e.getMessage());
+                }
+            });
+        }
+
+        void scheduleFlush() {
+            if (closed.get() || !flushScheduled.compareAndSet(false, true)) return;
+            try {
+                flushExecutor.execute(this::flush);
+            } catch (TaskRejectedException e) {
+                // more sessions waiting than the flush queue holds; the session's next frame retries
+                flushScheduled.set(false);
+                flushRejected.incrementAndGet();
+            }
+        }
+
+        private void flush() {
+            try {
+                Frame f;
+                while (!closed.get() && (f = poll()) != null) {
+                    long now = System.currentTimeMillis();
+                    if (now - f.enqueuedAt() > lateFrameMs) late.incrementAndGet();
+
+                    sendStartedAt = now;
+                    try {
+                        getDelegate().sendMessage(f.message());
+                        sent.incrementAndGet();
+                    } finally {
+                        sendStartedAt = 0;
+                    }
+                }
+            } catch (Exception e) {
+                abort("Outbound send failed (" + e.getMessage() + ")");
+            } finally {
+                flushScheduled.set(false);
+            }
+            // frames may have been queued after the last poll but before the flag was cleared
+            if (!closed.get() && size() > 0) scheduleFlush();
+        }
+
+        private Frame poll() {
+            synchronized (queue) { return removeFirst(); }
+        }
+
+        // caller holds the queue lock
+        private Frame removeFirst() {
+            Frame f = queue.pollFirst();
+            if (f != null) queuedBytes -= f.bytes();
+            return f;
+        }
+
+        // caller holds the queue lock
+        private boolean removeSameDestination(WebSocketMessage<?> message) {
+            String destination = destinationOf(message);
+            if (destination == null) return false;
+            for (Iterator<Frame> it = queue.iterator(); it.hasNext(); ) {
+                Frame f = it.next();
+                if (destination.equals(destinationOf(f.message()))) {
+                    it.remove();
+                    queuedBytes -= f.bytes();
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Reads the STOMP "destination" header from an encoded frame without decoding the body
+    private static String destinationOf(WebSocketMessage<?> message) {
+        String head;
+        if (message instanceof TextMessage t) {
+            head = t.getPayload();
+        } else if (message instanceof BinaryMessage b) {
+            ByteBuffer buf = b.getPayload().duplicate();
+            byte[] bytes = new byte[Math.min(buf.remaining(), 1024)];
+            buf.get(bytes);
+            head = new String(bytes, StandardCharsets.US_ASCII);
+        } else {
+            return null;
+        }
+
+        int end = head.indexOf("\n\n");
+        int i = head.indexOf("\ndestination:");
+        if (i < 0 || (end >= 0 && i > end)) return null;
+        int start = i + "\ndestination:".length();
+        int eol = head.indexOf('\n', start);
+        return eol < 0 ? null : head.substring(start, eol);
+    }
+}
@@ -0,0 +1,124 @@
+package chat;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Per-session payload negotiation: native (non-SockJS) sessions that send
+// "accept-content:application/cbor" on CONNECT get their JSON frames re-encoded as CBOR.
+// Spring only emits binary frames for application/octet-stream, so CBOR goes out with that
+// content type plus a "payload-encoding:cbor" header.
+public class PayloadEncodingInterceptor implements ChannelInterceptor {
+
+    public static final String NATIVE_TRANSPORT_ATTR = "nativeTransport";
+    public static final String ACCEPT_CONTENT_HEADER = "accept-content";
+    public static final String PAYLOAD_ENCODING_HEADER = "payload-encoding";
+
+    private final ObjectMapper jsonMapper;
+    private final CBORMapper cborMapper;
+
+    // session ids that negotiated CBOR
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+    // Recently transcoded payloads, direct-mapped by identity. The broker hands every subscriber
+    // of a topic the same payload array, and timeline fan-out sends one prebuilt payload to every
+    // follower, so one transcode serves all of them. Lock-free and bounded: a slot only holds the
+    // last payload that hashed to it.
+    private static final int CACHE_SLOTS = 256;
+    private final AtomicReferenceArray<Transcoded> transcoded = new AtomicReferenceArray<>(CACHE_SLOTS);
+
+    private record Transcoded(byte[] json, byte[] cbor) {}
+
+    public PayloadEncodingInterceptor(ObjectMapper jsonMapper, CBORMapper cborMapper) {
+        this.jsonMapper = jsonMapper;
+        this.cborMapper = cborMapper;
+    }
+
+    // --- clientInboundChannel: record what each session asked for ---
+    public ChannelInterceptor inbound() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+                String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+                if (sessionId == null) return message;
+
+                if (type == SimpMessageType.CONNECT && wantsCbor(message)) {
+                    cborSessions.add(sessionId);
+                } else if (type == SimpMessageType.DISCONNECT) {
+                    cborSessions.remove(sessionId);
+                }
+                return message;
+            }
+        };
+    }
+
+    // --- clientOutboundChannel: transcode JSON frames for CBOR sessions ---
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null || !cborSessions.contains(sessionId)) return message;
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) return message;
+        if (!(message.getPayload() instanceof byte[] json)) return message;
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (accessor.getContentType() == null
+                || !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(accessor.getContentType())) {
+            return message;
+        }
+
+        try {
+            int slot = System.identityHashCode(json) & (CACHE_SLOTS - 1);
+            Transcoded cached = transcoded.get(slot);
+            byte[] cbor;
+            if (cached != null && cached.json() == json) {
+                cbor = cached.cbor();
+            } else {
+                cbor = transcode(json);
+                transcoded.set(slot, new Transcoded(json, cbor));
+            }
+            accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+            accessor.setNativeHeader(PAYLOAD_ENCODING_HEADER, "cbor");
+            return MessageBuilder.createMessage(cbor, accessor.getMessageHeaders());
+        } catch (Exception e) {
+            System.err.println("CBOR transcoding failed for session " + sessionId + ": " + e.getMessage());
+            return message;
+        }
+    }
+
+    // streams JSON tokens straight into a CBOR generator, without building a tree
+    public byte[] transcode(byte[] json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser p = jsonMapper.getFactory().createParser(json);
+             JsonGenerator g = cborMapper.getFactory().createGenerator(out)) {
+            p.nextToken();
+            g.copyCurrentStructure(p);
+        }
+        return out.toByteArray();
+    }
+
+    private boolean wantsCbor(Message<?> message) {
+        Map<String, Object> attrs = SimpMessageHeaderAccessor.getSessionAttributes(message.getHeaders());
+        if (attrs == null || !Boolean.TRUE.equals(attrs.get(NATIVE_TRANSPORT_ATTR))) {
+            // SockJS frames are text only, so binary encodings can't be negotiated there
+            return false;
+        }
+        String accept = SimpMessageHeaderAccessor.wrap(message).getFirstNativeHeader(ACCEPT_CONTENT_HEADER);
+        return accept != null && accept.contains(CborMessageConverter.APPLICATION_CBOR.toString());
+    }
+}
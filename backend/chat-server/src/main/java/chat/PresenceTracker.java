@@ -0,0 +1,68 @@
+package chat;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Which users have a live timeline subscription on this node, from STOMP SUBSCRIBE/UNSUBSCRIBE/DISCONNECT events.
+@Component
+public class PresenceTracker {
+
+    private static final String TIMELINE_PREFIX = "/topic/timeline-";
+
+    // user -> sessions subscribed to that user's timeline
+    private final Map<String, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+    // session -> (subscription id -> user)
+    private final Map<String, Map<String, String>> subscriptions = new ConcurrentHashMap<>();
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        String sessionId = accessor.getSessionId();
+        if (destination == null || sessionId == null || !destination.startsWith(TIMELINE_PREFIX)) return;
+
+        String user = destination.substring(TIMELINE_PREFIX.length());
+        subscriptions.computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>())
+                .put(String.valueOf(accessor.getSubscriptionId()), user);
+        sessionsByUser.computeIfAbsent(user, k -> ConcurrentHashMap.newKeySet()).add(sessionId);
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Map<String, String> subs = subscriptions.get(accessor.getSessionId());
+        if (subs == null) return;
+
+        String user = subs.remove(String.valueOf(accessor.getSubscriptionId()));
+        if (user != null) removeSession(user, accessor.getSessionId());
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> subs = subscriptions.remove(event.getSessionId());
+        if (subs == null) return;
+
+        for (String user : subs.values()) {
+            removeSession(user, event.getSessionId());
+        }
+    }
+
+    public boolean isOnline(String user) {
+        return sessionsByUser.containsKey(user);
+    }
+
+    private void removeSession(String user, String sessionId) {
+        sessionsByUser.computeIfPresent(user, (k, sessions) -> {
+            sessions.remove(sessionId);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+}
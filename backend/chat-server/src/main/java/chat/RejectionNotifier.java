@@ -0,0 +1,36 @@
+package chat;
+
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Tells a user that a frame they sent was not accepted, on /topic/errors-{user}.
+@Component
+public class RejectionNotifier {
+
+    private static final String ERRORS_PREFIX = "/topic/errors-";
+
+    private final SimpMessagingTemplate messagingTemplate;
+
+    // lazy: the rate limiter that uses this sits on the inbound channel the template depends on
+    public RejectionNotifier(@Lazy SimpMessagingTemplate messagingTemplate) {
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    public void reject(String user, String destination, String error, long retryAfterMs) {
+        if (user == null) return;
+
+        Map<String,Object> notice = new LinkedHashMap<>();
+        notice.put("error", error);
+        notice.put("destination", destination);
+        notice.put("retryAfterMs", retryAfterMs);
+        try {
+            messagingTemplate.convertAndSend(ERRORS_PREFIX + user, notice);
+        } catch (Exception e) {
+            System.err.println("Could not notify " + user + " of rejected frame: " + e.getMessage());
+        }
+    }
+}
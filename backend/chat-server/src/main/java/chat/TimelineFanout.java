@@ -0,0 +1,167 @@
+package chat;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+// Asynchronous timeline fan-out: follower lookup and chunked delivery run on a worker pool.
+// Only followers subscribed on this node get a frame; the rest catch up through polling.
+@Component
+public class TimelineFanout {
+
+    private static final int RECENT_JOBS = 100;
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final PresenceTracker presence;
+    private final int chunkSize;
+    private final ThreadPoolTaskExecutor workers = new ThreadPoolTaskExecutor();
+
+    private final Deque<Job> recentJobs = new ConcurrentLinkedDeque<>();
+
+    public TimelineFanout(SimpMessagingTemplate messagingTemplate,
+                          PresenceTracker presence,
+                          @Value("${fanout.chunk-size:500}") int chunkSize,
+                          @Value("${fanout.threads:4}") int threads) {
+        this.messagingTemplate = messagingTemplate;
+        this.presence = presence;
+        this.chunkSize = chunkSize;
+
+        workers.setCorePoolSize(threads);
+        workers.setMaxPoolSize(threads);
+        workers.setThreadNamePrefix("fanout-");
+        workers.initialize();
+    }
+
+    // Queues delivery of msg to the author's followers. shouldSend runs right before each frame;
+    // followers it rejects (already delivered by polling) are skipped.
+    public void submit(ChatController.PostMessage msg, Callable<List<String>> followerLookup,
+                       Predicate<String> shouldSend) {
+        Job job = new Job(msg.getFrom(), msg.getTimestamp());
+        recentJobs.addFirst(job);
+        while (recentJobs.size() > RECENT_JOBS) recentJobs.pollLast();
+
+        workers.execute(() -> {
+            List<String> followers;
+            try {
+                followers = followerLookup.call();
+            } catch (Exception e) {
+                System.err.println("Fan-out follower lookup failed for " + msg.getFrom() + ": " + e.getMessage());
+                job.finish(true);
+                return;
+            }
+            if (followers == null) followers = List.of();
+
+            // serialized once; every follower's frame shares this payload
+            Message<?> frame = messagingTemplate.getMessageConverter().toMessage(msg, null);
+            if (frame == null) {
+                System.err.println("Fan-out could not serialize post from " + msg.getFrom());
+                job.finish(true);
+                return;
+            }
+
+            List<String> online = new ArrayList<>();
+            for (String f : followers) {
+                if (presence.isOnline(f)) online.add(f);
+            }
+            job.start(followers.size(), online.size());
+            if (online.isEmpty()) {
+                job.finish(false);
+                return;
+            }
+
+            int chunks = (online.size() + chunkSize - 1) / chunkSize;
+            AtomicInteger remaining = new AtomicInteger(chunks);
+            for (int i = 0; i < online.size(); i += chunkSize) {
+                List<String> chunk = online.subList(i, Math.min(i + chunkSize, online.size()));
+                workers.execute(() -> {
+                    try {
+                        for (String f : chunk) {
+                            if (!shouldSend.test(f)) {
+                                job.alreadyDelivered.incrementAndGet();
+                                continue;
+                            }
+                            messagingTemplate.send("/topic/timeline-" + f, frame);
+                            job.delivered.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        System.err.println("Fan-out chunk failed for " + msg.getFrom() + ": " + e.getMessage());
+                        job.failed = true;
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) job.finish(job.failed);
+                    }
+                });
+            }
+        });
+    }
+
+    // progress and lag of the most recent posts, newest first
+    public List<Map<String,Object>> recentJobs() {
+        List<Map<String,Object>> res = new ArrayList<>();
+        for (Job j : recentJobs) res.add(j.toMap());
+        return res;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    private static class Job {
+        final String author;
+        final long postTimestamp;
+        final long submittedAt = System.currentTimeMillis();
+        final AtomicInteger delivered = new AtomicInteger();
+        final AtomicInteger alreadyDelivered = new AtomicInteger();
+        volatile int followers, online;
+        volatile long startedAt, finishedAt;
+        volatile boolean failed;
+
+        Job(String author, long postTimestamp) {
+            this.author = author;
+            this.postTimestamp = postTimestamp;
+        }
+
+        void start(int followers, int online) {
+            this.followers = followers;
+            this.online = online;
+            this.startedAt = System.currentTimeMillis();
+        }
+
+        void finish(boolean failed) {
+            this.failed = failed;
+            this.finishedAt = System.currentTimeMillis();
+        }
+
+        Map<String,Object> toMap() {
+            long now = System.currentTimeMillis();
+            long end = finishedAt > 0 ? finishedAt : now;
+
+            Map<String,Object> m = new LinkedHashMap<>();
+            m.put("author", author);
+            m.put("timestamp", postTimestamp);
+            m.put("followers", followers);
+            m.put("online", online);
+            m.put("delivered", delivered.get());
+            m.put("alreadyDelivered", alreadyDelivered.get());
+            m.put("skippedOffline", followers - online);
+            m.put("queuedMs", (startedAt > 0 ? startedAt : now) - submittedAt);
+            m.put("lagMs", end - submittedAt);
+            m.put("done", finishedAt > 0);
+            m.put("failed", failed);
+            return m;
+        }
+    }
+}
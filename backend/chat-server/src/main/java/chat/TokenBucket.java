@@ -0,0 +1,51 @@
+package chat;
+
+// Classic token bucket: holds up to burst tokens and refills at perSecond.
+public class TokenBucket {
+
+    private final double burst;
+    private final double perNano;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    // no rejection notice before this (nanoTime); 0 = none sent yet
+    private long quietUntil;
+
+    public TokenBucket(double perSecond, double burst) {
+        this.burst = burst;
+        this.perNano = perSecond / 1_000_000_000.0;
+        this.tokens = burst;
+    }
+
+    public synchronized boolean tryConsume() {
+        refill();
+        if (tokens < 1) return false;
+        tokens -= 1;
+        return true;
+    }
+
+    // how long until the next token is available
+    public synchronized long retryAfterMs() {
+        refill();
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / perNano / 1_000_000.0);
+    }
+
+    // a full bucket behaves exactly like a new one, so it can be dropped
+    public synchronized boolean isFull() {
+        refill();
+        return tokens >= burst;
+    }
+
+    // true at most once per quietMs, so a client flooding past its limit gets one notice per window
+    public synchronized boolean claimNotice(long quietMs) {
+        long now = System.nanoTime();
+        if (quietUntil != 0 && now - quietUntil < 0) return false;
+        quietUntil = now + quietMs * 1_000_000;
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * perNano);
+        lastRefill = now;
+    }
+}
@@ -1,27 +1,143 @@
 package chat;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.*;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final CBORMapper cborMapper = new CBORMapper();
+    private final PayloadEncodingInterceptor payloadEncoding =
+            new PayloadEncodingInterceptor(new ObjectMapper(), cborMapper);
+    private final InboundRateLimiter rateLimiter;
+
+    // --- channel thread pools ---
+    @Value("${ws.inbound.core-pool-size:8}") private int inboundCorePoolSize;
+    @Value("${ws.inbound.max-pool-size:8}") private int inboundMaxPoolSize;
+    @Value("${ws.inbound.queue-capacity:2147483647}") private int inboundQueueCapacity;
+    @Value("${ws.outbound.core-pool-size:8}") private int outboundCorePoolSize;
+    @Value("${ws.outbound.max-pool-size:8}") private int outboundMaxPoolSize;
+    @Value("${ws.outbound.queue-capacity:2147483647}") private int outboundQueueCapacity;
+
+    // --- transport limits ---
+    @Value("${ws.send-time-limit-ms:10000}") private int sendTimeLimitMs;
+    @Value("${ws.send-buffer-size-bytes:524288}") private int sendBufferSizeBytes;
+    @Value("${ws.message-size-limit-bytes:65536}") private int messageSizeLimitBytes;
+    @Value("${ws.heartbeat-ms:10000}") private long heartbeatMs;
+
+    // --- per-session outbound queue ---
+    @Value("${ws.session.queue-limit:256}") private int sessionQueueLimit;
+    @Value("${ws.session.overflow-policy:DROP_OLDEST}") private OutboundQueueGuard.OverflowPolicy overflowPolicy;
+    @Value("${ws.session.late-frame-ms:2000}") private long lateFrameMs;
+    @Value("${ws.session.flush-threads:64}") private int flushThreads;
+    @Value("${ws.session.flush-queue-capacity:100000}") private int flushQueueCapacity;
+
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    public WebSocketConfig(InboundRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Autowired
+    public void setMessageBrokerTaskScheduler(@Lazy TaskScheduler taskScheduler) {
+        this.messageBrokerTaskScheduler = taskScheduler;
+    }
+
+    @Bean
+    public OutboundQueueGuard outboundQueueGuard() {
+        return new OutboundQueueGuard(sessionQueueLimit, sendBufferSizeBytes, overflowPolicy, sendTimeLimitMs,
+                lateFrameMs, flushThreads, flushQueueCapacity);
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic"); // subscriptions
+        config.enableSimpleBroker("/topic") // subscriptions
+                // server heartbeats; sessions that go quiet are closed by the broker
+                .setHeartbeatValue(new long[]{heartbeatMs, heartbeatMs})
+                .setTaskScheduler(messageBrokerTaskScheduler);
         config.setApplicationDestinationPrefixes("/app"); // sending messages
     }
 
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // the per-session buffer limit is enforced by OutboundQueueGuard, whose queue sits in
+        // front of Spring's send buffer and keeps it from ever filling
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setMessageSizeLimit(messageSizeLimitBytes)
+                .addDecoratorFactory(outboundQueueGuard().decoratorFactory());
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+
+        // Plain WebSocket endpoint (no SockJS framing). The container negotiates
+        // permessage-deflate here and clients may opt into binary CBOR payloads.
+        registry.addEndpoint("/ws-native")
+                .setAllowedOriginPatterns("*")
+                .addInterceptors(new NativeTransportInterceptor());
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // CBOR only kicks in for frames sent with content-type application/cbor
+        messageConverters.add(new CborMessageConverter(cborMapper));
+        return true; // keep the default JSON/String/byte[] converters
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(inboundCorePoolSize)
+                .maxPoolSize(inboundMaxPoolSize)
+                .queueCapacity(inboundQueueCapacity);
+        registration.interceptors(rateLimiter, payloadEncoding.inbound());
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(outboundCorePoolSize)
+                .maxPoolSize(outboundMaxPoolSize)
+                .queueCapacity(outboundQueueCapacity);
+        registration.interceptors(payloadEncoding);
+    }
+
+    // Marks sessions opened on /ws-native so binary encodings can be negotiated for them
+    private static class NativeTransportInterceptor implements HandshakeInterceptor {
+        @Override
+        public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                       WebSocketHandler wsHandler, Map<String, Object> attributes) {
+            attributes.put(PayloadEncodingInterceptor.NATIVE_TRANSPORT_ATTR, Boolean.TRUE);
+            return true;
+        }
+
+        @Override
+        public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Exception exception) {
+        }
     }
 
     @Bean
@@ -0,0 +1,58 @@
+package chat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+// Compares wire size and serialization cost of JSON, CBOR and the JSON->CBOR transcode
+// used for native sessions. Standalone main, not part of the test run:
+//   java -cp target/classes:target/test-classes:<deps> chat.PayloadEncodingBenchmark [iterations]
+public class PayloadEncodingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        ObjectMapper json = new ObjectMapper();
+        CBORMapper cbor = new CBORMapper();
+        PayloadEncodingInterceptor interceptor = new PayloadEncodingInterceptor(json, cbor);
+
+        long now = System.currentTimeMillis();
+        Object[] samples = {
+                new ChatController.ChatMessage("alice", "bob", "are we still on for lunch tomorrow?", now),
+                new ChatController.PostMessage("alice", "shipping the new timeline today #release #java", now),
+        };
+
+        System.out.printf("%-12s %10s %10s %14s %14s %14s%n",
+                "payload", "jsonBytes", "cborBytes", "jsonNs/op", "cborNs/op", "transcodeNs/op");
+        for (Object sample : samples) {
+            byte[] j = json.writeValueAsBytes(sample);
+            byte[] c = cbor.writeValueAsBytes(sample);
+
+            // warm up before timing
+            run(iterations, () -> json.writeValueAsBytes(sample));
+            run(iterations, () -> cbor.writeValueAsBytes(sample));
+            run(iterations, () -> interceptor.transcode(j));
+
+            System.out.printf("%-12s %10d %10d %14.0f %14.0f %14.0f%n",
+                    sample.getClass().getSimpleName(), j.length, c.length,
+                    run(iterations, () -> json.writeValueAsBytes(sample)),
+                    run(iterations, () -> cbor.writeValueAsBytes(sample)),
+                    run(iterations, () -> interceptor.transcode(j)));
+        }
+    }
+
+    private interface Op {
+        byte[] apply() throws Exception;
+    }
+
+    // average ns per call; the byte sum keeps the JIT from dropping the work
+    private static double run(int iterations, Op op) throws Exception {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += op.apply().length;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) System.out.print("");
+        return (double) elapsed / iterations;
+    }
+}
@@ -45,9 +45,9 @@ function HomePage(){
   const loadInitial = async (server:string) => {
     try {
       const allUsers = await (await fetch(`${authServerUrl}/auth/users`)).json();
-      const followData = await (await fetch(`${server}/chat/users?currentUser=${username}`)).json();
+      const followData = await (await fetch(`${server}/chat/following?currentUser=${username}`)).json();
       const followMap:Record<string,boolean>={};
-      followData.forEach((u:{username:string,followed:boolean})=>followMap[u.username]=u.followed);
+      (followData.following||[]).forEach((u:string)=>followMap[u]=true);
       const merged:User[] = allUsers.filter((u:string)=>u!==username)
         .map((u:string)=>({username:u,followed:followMap[u]||false}));
       setUsers(merged);
@@ -82,6 +82,7 @@ function HomePage(){
 
       const stompClient = new Client({
         webSocketFactory:()=>new SockJS(`${server}/ws`),
+        connectHeaders:{ login: username }, // binds this session to us for rate limiting
         reconnectDelay:0, // we'll handle reconnect logic
         debug: str => console.log(str),
         onWebSocketClose: async () => {
@@ -99,13 +100,19 @@ function HomePage(){
       stompClient.onConnect=()=> {
         stompClient.subscribe(`/topic/timeline-${username}`,msg=>{
           const newPost:PostMessage=JSON.parse(msg.body);
-          setTimeline(prev=>[...prev,newPost]);
+          // the same post can arrive from both live fan-out and polling after a reconnect
+          setTimeline(prev=>prev.some(p=>p.from===newPost.from&&p.timestamp===newPost.timestamp)?prev:[...prev,newPost]);
         });
         stompClient.subscribe(`/topic/chat-${username}`,msg=>{
           const m:ChatMessage=JSON.parse(msg.body);
           const otherUser = m.from===username?m.to:m.from;
           setChatMessages(prev=>({...prev,[otherUser]:[...(prev[otherUser]||[]),m]}));
         });
+        // frames the server rejected (rate limited, or not stored while the DB is busy)
+        stompClient.subscribe(`/topic/errors-${username}`,msg=>{
+          const notice=JSON.parse(msg.body);
+          console.warn(`${notice.destination} rejected: ${notice.error}, retry in ${notice.retryAfterMs} ms`);
+        });
       };
 
       stompClient.activate();